@@ -6,35 +6,12 @@ import io.BmpReader;
 import io.BmpWriter;
 import Kernels.Kernel;
 import Kernels.Kernels;
+import imageProcessors.PointPipeline;
 import imageProcessors.imageProcessor;
 
 import java.io.IOException;
 import java.util.*;
 
-class FilterInfo {
-    int id;
-    String name;
-    Object filterObject;
-    String type; // "Filter", "HSV", "Convolution", "Pixelate", "Sequence", "SobelEdge"
-
-    FilterInfo(int id, String name, Object filterObject, String type) {
-        this.id = id;
-        this.name = name;
-        this.filterObject = filterObject;
-        this.type = type;
-    }
-}
-
-class Command {
-    int filterId;
-    int strength;
-
-    Command(int filterId, int strength) {
-        this.filterId = filterId;
-        this.strength = strength;
-    }
-}
-
 public class App {
 
 
@@ -108,76 +85,20 @@ public class App {
         System.out.print("Enter sequence: ");
     }
 
-        // --- Helper for Deep Copy ---
-        private static Pixel[][] deepCopy (Pixel[][]original,int width, int height){
-        if (original == null) return null;
-        Pixel[][] copy = new Pixel[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                if (original[i][j] != null) {
-                    Pixel p = original[i][j];
-                    copy[i][j] = new Pixel(p.red, p.green, p.blue);
-                } else {
-                    copy[i][j] = null;
-                }
-            }
-        }
-        return copy;
-    }
-
-
         // --- Filter Sequence Implementations ---
 
         static void applySobelEdgeDetection (BmpImage img1){
-        int height = Math.abs(img1.header.height);
-        int width = img1.header.width;
-
-        System.out.println("Applying Greyscale for Sobel...");
-        imageProcessor.applyFilter(img1, greyscale, 0); // Apply grayscale
-
-        System.out.println("Creating copy for Gx...");
-        Pixel[][] grayscaleGrid = deepCopy(img1.pixelGrid, width, height);
-        if (grayscaleGrid == null) {
-            System.err.println("Deep copy failed!");
-            return;
-        }
-
-        System.out.println("Applying Sobel X...");
-        imageProcessor.convolution(img1, Kernels.SOBEL_X); // img1 now holds Gx result
-        Pixel[][] gxGrid = img1.pixelGrid; // Reference to Gx result
-
-        img1.pixelGrid = grayscaleGrid; // Restore original grayscale grid to img1
-
-        System.out.println("Applying Sobel Y...");
-        imageProcessor.convolution(img1, Kernels.SOBEL_Y); // img1 now holds Gy result
-        Pixel[][] gyGrid = img1.pixelGrid; // Reference to Gy result
-
-        System.out.println("Calculating magnitude...");
-        Pixel[][] magnitudeResult = new Pixel[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                // Check for nulls from convolution boundary handling maybe?
-                if (gxGrid[i][j] == null || gyGrid[i][j] == null) {
-                    magnitudeResult[i][j] = new Pixel(0, 0, 0); // Black if source is null
-                    continue;
-                }
-                // Grayscale means R=G=B, so use any channel (e.g., red) for gradient value
-                double gx = gxGrid[i][j].red;
-                double gy = gyGrid[i][j].red;
-
-                double magnitude = Math.sqrt(gx * gx + gy * gy);
-                int grayValue = Math.max(0, Math.min(255, (int) magnitude));
-                magnitudeResult[i][j] = new Pixel(grayValue, grayValue, grayValue);
-            }
-        }
-        img1.pixelGrid = magnitudeResult; // Update image with final magnitude map
+        System.out.println("Applying Sobel edge detection (greyscale, Gx, Gy and magnitude in one pass)...");
+        imageProcessor.sobelEdges(img1);
         System.out.println("Sobel Edge Detection complete.");
     }
 
         static void comic1 (BmpImage img1){
         System.out.println("Applying sequence: Comic Effect 1");
-        imageProcessor.applyFilter(img1, greyscale, 1);
-        imageProcessor.applyFilter(img1, posterize, 4); // Strength = 4 levels
+        new PointPipeline()
+                .add(greyscale, 1)
+                .add(posterize, 4) // Strength = 4 levels
+                .apply(img1);
         applySobelEdgeDetection(img1); // Apply edge detection
         imageProcessor.applyFilter(img1, threshold, 35); // Threshold the edges
     }
@@ -185,28 +106,25 @@ public class App {
         static void grey_art (BmpImage img1){
         System.out.println("Applying sequence: Grey Art Effect");
 //        imageProcessor.convolution(img1, Kernels.SHARPEN);
-        imageProcessor.applyFilter(img1, greyscale, 0); // Strength 0 for standard grayscale
-        imageProcessor.applyFilter(img1, posterize, 3);
+        new PointPipeline()
+                .add(greyscale, 0) // Strength 0 for standard grayscale
+                .add(posterize, 3)
+                .apply(img1);
     }
 
         static void comic2 (BmpImage img1)
         {
         System.out.println("Applying sequence: Comic Effect 2");
+        img1.expandIndexed(); // works on the raster directly below
         imageProcessor.applyFilter(img1, greyscale, 1);
-        Pixel[][] originalGrayscale = deepCopy(img1.pixelGrid, img1.header.width, Math.abs(img1.header.height)); // Need edges from grayscale
-        applySobelEdgeDetection(img1); // img1 now has edges
-        Pixel[][] edges = img1.pixelGrid; // Reference edges
-
-        img1.pixelGrid = originalGrayscale;
+        // edges come back as a new raster, so the greyscale image stays put for posterizing
+        int[] edges = imageProcessor.sobelEdges(img1.pixels, img1.width, img1.height);
         imageProcessor.applyFilter(img1, posterize, 4);
 
 
-        for (int i = 0; i < Math.abs(img1.header.height); i++) {
-            for (int j = 0; j < img1.header.width; j++) {
-                if (edges[i][j] != null && edges[i][j].red > 50) {
-                    img1.pixelGrid[i][j] = new Pixel(0, 0, 0);
-                }
-
+        for (int i = 0; i < edges.length; i++) {
+            if (Pixel.red(edges[i]) > 50) {
+                img1.pixels[i] = 0;
             }
         }
     }
@@ -214,14 +132,170 @@ public class App {
         static void dreamy (BmpImage img1){
         System.out.println("Applying sequence: Dreamy Effect");
         imageProcessor.convolution(img1, Kernels.GAUSSIAN_BLUR_7x7); // Strong blur
-        imageProcessor.applyFilter(img1, brightness, 20); // Increase brightness slightly
-        imageProcessor.applyHSVfilter(img1, saturation, -30); // Decrease saturation
+        new PointPipeline()
+                .add(brightness, 20) // Increase brightness slightly
+                .addHsv(saturation, -30) // Decrease saturation
+                .apply(img1);
     }
 
 
 
+        // --- Command execution ---
+
+        // Runs the commands in order, but gathers each run of consecutive point filters (Filter and HSV)
+        // into one PointPipeline so the run costs a single pass over the image. Anything that reads
+        // neighbouring pixels (convolution, pixelate, the sequences) ends the run.
+        // Returns how many steps failed; a failed step is reported and skipped, the rest still run.
+        static int runCommands (BmpImage img1, List<Command> commands){
+        int failures = 0;
+        PointPipeline pending = new PointPipeline();
+        List<String> pendingNames = new ArrayList<>();
+        for (Command cmd : commands) {
+            FilterInfo info = availableFilters.get(cmd.filterId);
+            if (info == null) {
+                System.err.println("Warning: Filter ID " + cmd.filterId + " not found. Skipping.");
+                continue;
+            }
+
+            try {
+                switch(info.type) {
+                    case "Filter":
+                        if (info.filterObject instanceof Filters) {
+                            System.out.println("Queueing: " + info.name + " with strength/param " + cmd.strength);
+                            pending.add((Filters) info.filterObject, cmd.strength);
+                            pendingNames.add(info.name);
+                        } else { throw new ClassCastException("Filter object mismatch"); }
+                        continue;
+                    case "HSV":
+                        if (info.filterObject instanceof HSVfilters) {
+                            System.out.println("Queueing: " + info.name + " with strength/param " + cmd.strength);
+                            pending.addHsv((HSVfilters) info.filterObject, cmd.strength);
+                            pendingNames.add(info.name);
+                        } else { throw new ClassCastException("HSVFilter object mismatch"); }
+                        continue;
+                    default:
+                        break;
+                }
+            } catch (Exception e) {
+                System.err.println("Error applying filter/sequence " + info.name + ": " + e.getMessage());
+                e.printStackTrace();
+                failures++;
+                continue;
+            }
+
+            // a neighbourhood operation needs every earlier point filter applied first
+            if (!flush(img1, pending, pendingNames)) failures++;
+            pending = new PointPipeline();
+            System.out.println("Applying: " + info.name + " with strength/param " + cmd.strength);
+
+            try {
+                switch(info.type) {
+                    case "Convolution":
+                        if (info.filterObject instanceof Kernel) {
+                            imageProcessor.convolution(img1, (Kernel) info.filterObject);
+                        } else { throw new ClassCastException("Kernel object mismatch"); }
+                        break;
+                    case "Pixelate":
+                        imageProcessor.pixelarise(img1, cmd.strength); // Strength is block size
+                        break;
+                    case "SobelEdge":
+                        applySobelEdgeDetection(img1); // Strength ignored
+                        break;
+                    case "Sequence_Comic1":
+                        comic1(img1); // Strength ignored
+                        break;
+                    case "Sequence_Comic2":
+                        comic2(img1); // Strength ignored
+                        break;
+                    case "Sequence_GreyArt":
+                        grey_art(img1); // Strength ignored
+                        break;
+                    case "Sequence_Dreamy":
+                        dreamy(img1); // Strength ignored
+                        break;
+                    default:
+                        System.err.println("Warning: Unknown filter type '" + info.type + "' for ID " + cmd.filterId + ". Skipping.");
+                }
+            } catch (Exception e) {
+                System.err.println("Error applying filter/sequence " + info.name + ": " + e.getMessage());
+                e.printStackTrace();
+                failures++;
+            }
+        }
+        if (!flush(img1, pending, pendingNames)) failures++;
+        return failures;
+    }
+
+        // Applies the gathered point filters, if any. False if that failed.
+        private static boolean flush (BmpImage img1, PointPipeline pending, List<String> pendingNames){
+        if (pending.isEmpty()) return true;
+        System.out.println("Applying: " + String.join(" + ", pendingNames) + " in one pass");
+        boolean ok = true;
+        try {
+            pending.apply(img1);
+        } catch (Exception e) {
+            System.err.println("Error applying filter/sequence " + String.join(" + ", pendingNames) + ": " + e.getMessage());
+            e.printStackTrace();
+            ok = false;
+        }
+        pendingNames.clear();
+        return ok;
+    }
+
+        // Parses 'FilterNumber Strength FilterNumber Strength ...', stopping at a FilterNumber of 0
+        static List<Command> parseCommands (String[] parts){
+        List<Command> commands = new ArrayList<>();
+        for (int i = 0; i < parts.length; i += 2) {
+            int filterId = Integer.parseInt(parts[i]);
+            if (filterId == 0) {
+                break;
+            }
+            if (i + 1 >= parts.length) {
+                throw new IllegalArgumentException("Missing strength value for filter ID " + filterId);
+            }
+            int strength = Integer.parseInt(parts[i + 1]);
+            commands.add(new Command(filterId, strength));
+        }
+        return commands;
+    }
+
+        // Writes back a plain 24-bit BITMAPINFOHEADER sized for the current raster
+        static void prepareHeaderForWrite (BmpImage img1){
+        int finalHeight = img1.height;
+        int finalWidth = img1.width;
+
+        img1.header.width = finalWidth;
+        img1.header.height = finalHeight;
+        img1.header.bitsPerPixel = 24;
+        img1.header.planes = 1;
+        img1.header.compression = 0;
+        img1.header.headerSize = 40;
+        img1.header.pixelOffset = 54;
+        img1.header.colorsInColorTable = 0;
+        img1.header.importantColors = 0;
+        img1.header.reserved1 = 0;
+        img1.header.reserved2 = 0;
+
+        int rowDataSize = finalWidth * 3;
+        if (img1.isIndexed()) {
+            // still palettized (only point filters ran), so it goes back out as 8-bit with its palette
+            int colours = img1.indexed.palette.length;
+            img1.header.bitsPerPixel = 8;
+            img1.header.colorsInColorTable = colours;
+            img1.header.pixelOffset = 54 + colours * 4;
+            rowDataSize = finalWidth;
+        }
+        int padding = (4 - (rowDataSize % 4)) % 4;
+        int stride = rowDataSize + padding;
+        img1.header.imageSize = stride * finalHeight;
+        img1.header.fileSize = img1.header.pixelOffset + img1.header.imageSize;
+    }
+
     public static void main(String[] args) {
         initializeFilters();
+        if (args.length > 0) {
+            System.exit(BatchRunner.run(args, availableFilters));
+        }
         Scanner scanner = new Scanner(System.in);
         // Prompt user for file path
         System.out.print("Enter the path to the BMP image: ");
@@ -236,7 +310,7 @@ public class App {
         try {
             System.out.println("Reading image: " + inputFilePath);
             BmpImage img1 = BmpReader.read(inputFilePath);
-            if (img1 == null || img1.header == null || img1.pixelGrid == null) {
+            if (img1 == null || img1.header == null || img1.pixels == null) {
                 System.err.println("Failed to read image or its components.");
                 scanner.close();
                 return;
@@ -247,31 +321,16 @@ public class App {
             displayMenu();
             String line = scanner.nextLine();
             String[] parts = line.trim().split("\\s+");
-            List<Command> commands = new ArrayList<>();
+            List<Command> commands;
 
             try {
-                for (int i = 0; i < parts.length; i += 2) {
-                    int filterId = Integer.parseInt(parts[i]);
-                    if (filterId == 0) {
-                        break;
-                    }
-                    // Allow single '0' entry
-                    if (parts.length == 1 && filterId == 0) break;
-
-                    if (i + 1 >= parts.length) {
-                        System.err.println("Error: Missing strength value for filter ID " + filterId + ". Aborting.");
-                        scanner.close();
-                        return;
-                    }
-                    int strength = Integer.parseInt(parts[i + 1]);
-                    commands.add(new Command(filterId, strength));
-                }
+                commands = parseCommands(parts);
             } catch (NumberFormatException e) {
                 System.err.println("Error: Invalid number format in input sequence. Please enter numbers only. Aborting.");
                 scanner.close();
                 return;
-            } catch (ArrayIndexOutOfBoundsException e) {
-                System.err.println("Error: Input sequence seems incomplete. Aborting.");
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage() + ". Aborting.");
                 scanner.close();
                 return;
             }
@@ -283,85 +342,13 @@ public class App {
             }
             else {
                 System.out.println("\nApplying " + commands.size() + " filter(s)/sequence(s)...");
-                for (Command cmd : commands) {
-                    FilterInfo info = availableFilters.get(cmd.filterId);
-                    if (info == null) {
-                        System.err.println("Warning: Filter ID " + cmd.filterId + " not found. Skipping.");
-                        continue;
-                    }
-
-                    System.out.println("Applying: " + info.name + " with strength/param " + cmd.strength);
-
-                    try {
-                        switch(info.type) {
-                            case "Filter":
-                                if (info.filterObject instanceof Filters) {
-                                    imageProcessor.applyFilter(img1, (Filters) info.filterObject, cmd.strength);
-                                } else { throw new ClassCastException("Filter object mismatch"); }
-                                break;
-                            case "HSV":
-                                if (info.filterObject instanceof HSVfilters) {
-                                    imageProcessor.applyHSVfilter(img1, (HSVfilters) info.filterObject, cmd.strength);
-                                } else { throw new ClassCastException("HSVFilter object mismatch"); }
-                                break;
-                            case "Convolution":
-                                if (info.filterObject instanceof Kernel) {
-                                    imageProcessor.convolution(img1, (Kernel) info.filterObject);
-                                } else { throw new ClassCastException("Kernel object mismatch"); }
-                                break;
-                            case "Pixelate":
-                                imageProcessor.pixelarise(img1, cmd.strength); // Strength is block size
-                                break;
-                            case "SobelEdge":
-                                applySobelEdgeDetection(img1); // Strength ignored
-                                break;
-                            case "Sequence_Comic1":
-                                comic1(img1); // Strength ignored
-                                break;
-                            case "Sequence_Comic2":
-                                comic2(img1); // Strength ignored
-                                break;
-                            case "Sequence_GreyArt":
-                                grey_art(img1); // Strength ignored
-                                break;
-                            case "Sequence_Dreamy":
-                                dreamy(img1); // Strength ignored
-                                break;
-                            default:
-                                System.err.println("Warning: Unknown filter type '" + info.type + "' for ID " + cmd.filterId + ". Skipping.");
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Error applying filter/sequence " + info.name + ": " + e.getMessage());
-                        e.printStackTrace();
-                        // Consider adding a flag to stop processing on error if desired
-                    }
-                }
+                runCommands(img1, commands);
                 System.out.println("Filter application complete.");
             }
 
 
             System.out.println("Updating header for output...");
-
-            int finalHeight = img1.pixelGrid.length;
-            int finalWidth = img1.pixelGrid[0].length;
-
-            img1.header.width = finalWidth;
-            img1.header.height = finalHeight;
-            img1.header.bitsPerPixel = 24;
-            img1.header.planes = 1;
-            img1.header.compression = 0;
-            img1.header.headerSize = 40;
-            img1.header.pixelOffset = 54;
-            img1.header.colorsInColorTable = 0;
-            img1.header.importantColors = 0;
-            img1.header.reserved1 = 0;
-            img1.header.reserved2 = 0;
-
-            int rowDataSize = finalWidth * 3;
-            int padding = (4 - (rowDataSize % 4)) % 4;
-            int stride = rowDataSize + padding;
-            img1.header.imageSize = stride * finalHeight;
-            img1.header.fileSize = img1.header.pixelOffset + img1.header.imageSize;
+            prepareHeaderForWrite(img1);
 
             System.out.println("Final Header for Writing:");
             System.out.println(img1.header);
@@ -0,0 +1,245 @@
+import Models.BmpImage;
+import imageProcessors.ParallelRows;
+import io.BmpReader;
+import io.BmpWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Headless mode for App: one filter chain over many files, several files at a time.
+//
+//   java App --input <dir or glob> --chain "1 0 2 4 0" --out <dir> [--workers n] [--verbose]
+//
+// A directory means every .bmp directly inside it. Otherwise --input is a glob such as "scans/*.bmp" or
+// "scans/**/*.bmp"; the ** form walks subfolders and keeps their layout under --out.
+// Each worker reads, filters and writes one file at a time, so at most --workers images are in memory.
+// Per-file results go to stdout as files finish, with a summary and the list of failures at the end.
+// The reader, writer and command runner print their interactive progress lines to System.out; with several
+// workers those interleave into noise, so System.out is muted for the run unless --verbose is given.
+class BatchRunner {
+
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+    // where the per-file lines and the summary go, whatever System.out is switched to
+    private static PrintStream report = System.out;
+
+    static class Result {
+        final Path input;
+        final boolean ok;
+        final String error;
+        final long nanos;
+        final long pixels;
+
+        Result(Path input, boolean ok, String error, long nanos, long pixels) {
+            this.input = input;
+            this.ok = ok;
+            this.error = error;
+            this.nanos = nanos;
+            this.pixels = pixels;
+        }
+    }
+
+    static int run(String[] args, Map<Integer, FilterInfo> availableFilters) {
+        String input = null, chain = null, out = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        boolean verbose = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--input": input = args[++i]; break;
+                    case "--chain": chain = args[++i]; break;
+                    case "--out": out = args[++i]; break;
+                    case "--workers": workers = Math.max(1, Integer.parseInt(args[++i])); break;
+                    case "--verbose": verbose = true; break;
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        return usage();
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return usage();
+        }
+        if (input == null || chain == null || out == null) {
+            return usage();
+        }
+
+        List<Command> commands;
+        try {
+            commands = App.parseCommands(chain.trim().split("\\s+"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad --chain: " + e.getMessage());
+            return 2;
+        }
+        for (Command cmd : commands) {
+            if (!availableFilters.containsKey(cmd.filterId)) {
+                System.err.println("Bad --chain: filter ID " + cmd.filterId + " not found");
+                return 2;
+            }
+        }
+
+        Path outDir = Paths.get(out);
+        Map<Path, Path> jobs;
+        try {
+            jobs = findInputs(input, outDir);
+            Files.createDirectories(outDir);
+        } catch (IOException e) {
+            System.err.println("Could not list inputs: " + e.getMessage());
+            return 2;
+        }
+        if (jobs.isEmpty()) {
+            System.err.println("No .bmp files match " + input);
+            return 1;
+        }
+
+        // the workers all hand their row bands to the one ParallelRows pool (one thread per core unless
+        // bmpeditor.threads says otherwise), so cores a worker leaves idle, e.g. while it reads or writes,
+        // go to the other workers' bands
+        report = System.out;
+        report.println("Batch: " + jobs.size() + " file(s), " + commands.size() + " command(s), "
+                + workers + " worker(s) sharing " + ParallelRows.getThreadCount() + " row-band thread(s)");
+        if (!verbose) System.setOut(QUIET);
+        try {
+            return runJobs(jobs, commands, workers);
+        } finally {
+            System.setOut(report);
+        }
+    }
+
+    private static int runJobs(Map<Path, Path> jobs, List<Command> commands, int workers) {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Map.Entry<Path, Path> job : jobs.entrySet()) {
+            futures.add(pool.submit(() -> processFile(job.getKey(), job.getValue(), commands)));
+        }
+        pool.shutdown();
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                System.err.println("Batch interrupted");
+                return 1;
+            } catch (ExecutionException e) {
+                // processFile catches everything itself, so this is an Error like OutOfMemoryError
+                System.err.println("Worker died: " + e.getCause());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return report(results, jobs.size(), elapsed);
+    }
+
+    private static Result processFile(Path input, Path output, List<Command> commands) {
+        long start = System.nanoTime();
+        try {
+            BmpImage image = BmpReader.read(input.toString());
+            if (image == null || image.header == null || image.pixels == null) {
+                return failed(input, "could not read image", start);
+            }
+            int failures = App.runCommands(image, commands);
+            if (failures > 0) {
+                return failed(input, failures + " command(s) failed", start);
+            }
+            App.prepareHeaderForWrite(image);
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            BmpWriter.write(output.toString(), image);
+            long nanos = System.nanoTime() - start;
+            report.printf("[ok] %s -> %s (%.1f ms)%n", input, output, nanos / 1e6);
+            return new Result(input, true, null, nanos, (long) image.width * image.height);
+        } catch (Exception e) {
+            return failed(input, e.toString(), start);
+        }
+    }
+
+    private static Result failed(Path input, String error, long start) {
+        report.println("[failed] " + input + ": " + error);
+        return new Result(input, false, error, System.nanoTime() - start, 0);
+    }
+
+    private static int report(List<Result> results, int submitted, long elapsed) {
+        List<Result> done = results.stream().filter(r -> r.ok).collect(Collectors.toList());
+        List<Result> failedResults = results.stream().filter(r -> !r.ok).collect(Collectors.toList());
+        int lost = submitted - results.size();
+        double seconds = elapsed / 1e9;
+        long pixels = done.stream().mapToLong(r -> r.pixels).sum();
+        long[] times = done.stream().mapToLong(r -> r.nanos).sorted().toArray();
+
+        report.println("\n--- Batch summary ---");
+        report.printf("Files: %d ok, %d failed%s, %.2f s wall time%n", done.size(), failedResults.size() + lost,
+                lost > 0 ? " (" + lost + " lost to worker errors)" : "", seconds);
+        if (times.length > 0) {
+            report.printf("Throughput: %.1f files/s (%.0f files/hour), %.1f MP/s%n",
+                    done.size() / seconds, done.size() / seconds * 3600, pixels / 1e6 / seconds);
+            report.printf("Per file: median %.1f ms, slowest %.1f ms%n",
+                    times[times.length / 2] / 1e6, times[times.length - 1] / 1e6);
+        }
+        if (!failedResults.isEmpty()) {
+            report.println("Failures:");
+            for (Result r : failedResults) {
+                report.println("  " + r.input + ": " + r.error);
+            }
+        }
+        return failedResults.isEmpty() && lost == 0 ? 0 : 1;
+    }
+
+    // input file -> output file, in a stable order
+    private static Map<Path, Path> findInputs(String input, Path outDir) throws IOException {
+        Map<Path, Path> jobs = new TreeMap<>();
+        Path asPath = Paths.get(input);
+        if (Files.isDirectory(asPath)) {
+            try (Stream<Path> files = Files.list(asPath)) {
+                files.filter(BatchRunner::isBmp)
+                        .forEach(p -> jobs.put(p, outDir.resolve(p.getFileName())));
+            }
+            return jobs;
+        }
+
+        // glob: walk from the deepest folder before the first wildcard
+        String normalised = input.replace('\\', '/');
+        int wildcard = indexOfWildcard(normalised);
+        if (wildcard < 0) {
+            if (Files.isRegularFile(asPath)) jobs.put(asPath, outDir.resolve(asPath.getFileName()));
+            return jobs;
+        }
+        int slash = normalised.lastIndexOf('/', wildcard);
+        Path base = slash < 0 ? Paths.get(".") : Paths.get(normalised.substring(0, Math.max(1, slash)));
+        String pattern = slash < 0 ? normalised : normalised.substring(slash + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        // Java's "**/" needs at least one folder; people mean "this folder too"
+        PathMatcher topLevel = pattern.startsWith("**/")
+                ? FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(3)) : matcher;
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+        try (Stream<Path> files = Files.walk(base, depth)) {
+            files.filter(p -> Files.isRegularFile(p)
+                            && (matcher.matches(base.relativize(p)) || topLevel.matches(base.relativize(p))))
+                    .forEach(p -> jobs.put(p, outDir.resolve(base.relativize(p).toString())));
+        }
+        return jobs;
+    }
+
+    private static int indexOfWildcard(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return i;
+        }
+        return -1;
+    }
+
+    private static boolean isBmp(Path p) {
+        return Files.isRegularFile(p) && p.getFileName().toString().toLowerCase().endsWith(".bmp");
+    }
+
+    private static int usage() {
+        System.err.println("Usage: java App --input <dir or glob> --chain \"FilterNumber Strength ...\" --out <dir> [--workers n] [--verbose]");
+        System.err.println("Run without arguments for the interactive menu, which lists the filter numbers.");
+        return 2;
+    }
+}
@@ -0,0 +1,280 @@
+import Filters.*;
+import Kernels.Kernel;
+import Kernels.Kernels;
+import Models.BmpHeader;
+import Models.BmpImage;
+import Models.IndexedRaster;
+import imageProcessors.ParallelRows;
+import imageProcessors.imageProcessor;
+import io.BmpReader;
+import io.BmpWriter;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.*;
+
+// Timing harness for the hot paths: reading, writing, every filter, HSV, every Kernels constant,
+// pixelate, rotations and the App sequences, over several image sizes (odd widths included so
+// the row padding code runs). Fixtures are synthetic BMPs written to a temp directory at startup.
+// Flat-colour line art and screenshot-like fixtures also go through 8-bit BI_RGB and RLE, with file sizes printed.
+//
+// The JMH benchmarks in jmh/benchmarks (gradle jmh) are the ones to trust for comparisons; this is the quick
+// version that needs no build tool, and the only one that reports file sizes.
+//
+// Usage: java Benchmarks [--sizes 257x131,1920x1080,4001x3000] [--only regex] [--warmup 3] [--iterations 5] [--threads n]
+//
+// Each case gets warmup runs to let the JIT settle, then timed runs on a fresh copy of the source image
+// (the copy is not timed). Reports the median, the fastest run and megapixels per second of the median.
+public class Benchmarks {
+
+    interface Case {
+        void run(BmpImage image) throws Exception;
+    }
+
+    private static final String DEFAULT_SIZES = "257x131,1920x1080,4001x3000";
+
+    // everything the operations print goes here while they are being timed
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final PrintStream report = System.out;
+    private static long checksum;
+
+    public static void main(String[] args) throws Exception {
+        String sizes = DEFAULT_SIZES;
+        String only = null;
+        int warmup = 3;
+        int iterations = 5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes": sizes = args[++i]; break;
+                case "--only": only = args[++i]; break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--threads": ParallelRows.setThreadCount(Integer.parseInt(args[++i])); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        File fixtures = Files.createTempDirectory("bmp-bench").toFile();
+        report.printf("threads=%d warmup=%d iterations=%d%n", ParallelRows.getThreadCount(), warmup, iterations);
+        report.printf("%-42s %11s %10s %10s %9s%n", "case", "size", "median ms", "best ms", "MP/s");
+
+        for (String size : sizes.split(",")) {
+            String[] parts = size.trim().split("x");
+            int width = Integer.parseInt(parts[0]);
+            int height = Integer.parseInt(parts[1]);
+            BmpImage source = syntheticImage(width, height);
+            File fixture = new File(fixtures, "fixture_" + width + "x" + height + ".bmp");
+            System.setOut(QUIET);
+            try {
+                BmpWriter.write(fixture.getPath(), source);
+            } finally {
+                System.setOut(report);
+            }
+            File output = new File(fixtures, "out_" + width + "x" + height + ".bmp");
+
+            Map<String, Case> cases = cases(fixture.getPath(), output.getPath());
+            cases.putAll(indexedCases(fixtures, "lineart", lineArt(width, height, 8)));
+            cases.putAll(indexedCases(fixtures, "screenshot", lineArt(width, height, 64)));
+            for (Map.Entry<String, Case> entry : cases.entrySet()) {
+                if (only != null && !entry.getKey().matches(only)) continue;
+                measure(entry.getKey(), entry.getValue(), source, warmup, iterations);
+            }
+            fixture.delete();
+            output.delete();
+        }
+        for (File left : Objects.requireNonNull(fixtures.listFiles())) {
+            left.delete();
+        }
+        fixtures.delete();
+        report.println("checksum " + checksum); // keeps the results live
+    }
+
+    private static Map<String, Case> cases(String fixture, String output) {
+        Map<String, Case> cases = new LinkedHashMap<>();
+        for (BmpReader.ReadMode mode : BmpReader.ReadMode.values()) {
+            cases.put("read/" + mode, image -> consume(BmpReader.read(fixture, mode)));
+        }
+        cases.put("write", image -> BmpWriter.write(output, image));
+
+        cases.put("filter/greyScale", image -> imageProcessor.applyFilter(image, new greyScale(), 0));
+        cases.put("filter/posterize 4", image -> imageProcessor.applyFilter(image, new posterize(), 4));
+        cases.put("filter/threshold 128", image -> imageProcessor.applyFilter(image, new threshold(), 128));
+        cases.put("filter/negative", image -> imageProcessor.applyFilter(image, new negative(), 0));
+        cases.put("filter/darken 40", image -> imageProcessor.applyFilter(image, new darken(), 40));
+        cases.put("filter/brightness 30", image -> imageProcessor.applyFilter(image, new brightness(), 30));
+        cases.put("filter/solarize 128", image -> imageProcessor.applyFilter(image, new solarize(), 128));
+        cases.put("filter/solarizeTest 128", image -> imageProcessor.applyFilter(image, new solarizeTest(), 128));
+        cases.put("filter/swap", image -> imageProcessor.applyFilter(image, new swap(), 0));
+        cases.put("filter/red 50", image -> imageProcessor.applyFilter(image, new red(), 50));
+        cases.put("filter/blue 50", image -> imageProcessor.applyFilter(image, new blue(), 50));
+
+        cases.put("hsv/hue 90", image -> imageProcessor.applyHSVfilter(image, new hue(), 90));
+        cases.put("hsv/saturation -30", image -> imageProcessor.applyHSVfilter(image, new saturation(), -30));
+        cases.put("hsv/value 40", image -> imageProcessor.applyHSVfilter(image, new value(), 40));
+
+        // every public Kernel constant, so new ones are picked up without touching this file
+        for (Field field : Kernels.class.getFields()) {
+            if (field.getType() == Kernel.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    Kernel kernel = (Kernel) field.get(null);
+                    cases.put("convolution/" + field.getName(), image -> imageProcessor.convolution(image, kernel));
+                } catch (IllegalAccessException e) {
+                    System.err.println("Skipping kernel " + field.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        cases.put("pixelate 8", image -> imageProcessor.pixelarise(image, 8));
+        cases.put("pixelate 64", image -> imageProcessor.pixelarise(image, 64));
+        cases.put("rotate/left", imageProcessor::rotateleft);
+        cases.put("rotate/right", imageProcessor::rotateright);
+        cases.put("rotate/180", imageProcessor::rotate180);
+        cases.put("flip/horizontal", imageProcessor::flipHorizontal);
+        cases.put("flip/vertical", imageProcessor::flipVertical);
+
+        cases.put("sequence/sobel", App::applySobelEdgeDetection);
+        cases.put("sequence/comic1", App::comic1);
+        cases.put("sequence/comic2", App::comic2);
+        cases.put("sequence/grey_art", App::grey_art);
+        cases.put("sequence/dreamy", App::dreamy);
+        return cases;
+    }
+
+    // Uncompressed 8-bit vs RLE for one palettized image. The timed image is ignored, the fixture is captured.
+    private static Map<String, Case> indexedCases(File dir, String name, BmpImage image) throws Exception {
+        String size = image.width + "x" + image.height;
+        File plain = new File(dir, name + "_" + size + ".bmp");
+        File rle = new File(dir, name + "_" + size + "_rle.bmp");
+        File rgb = new File(dir, name + "_" + size + "_24.bmp");
+        File output = new File(dir, name + "_" + size + "_out.bmp");
+        BmpImage expanded = image.copy();
+        expanded.expandIndexed();
+        expanded.UpdateHeader(14, 40);
+        System.setOut(QUIET);
+        try {
+            BmpWriter.write(plain.getPath(), image);
+            BmpWriter.writeRle(rle.getPath(), image);
+            BmpWriter.write(rgb.getPath(), expanded);
+        } finally {
+            System.setOut(report);
+        }
+        report.printf("%-42s %11s %,d bytes 24-bit, %,d BI_RGB 8-bit, %,d RLE (%.1fx smaller than 8-bit)%n",
+                "size/" + name, size, rgb.length(), plain.length(), rle.length(),
+                (double) plain.length() / rle.length());
+
+        Map<String, Case> cases = new LinkedHashMap<>();
+        cases.put("read/" + name + " BI_RGB", ignored -> consume(BmpReader.read(plain.getPath())));
+        cases.put("read/" + name + " RLE", ignored -> consume(BmpReader.read(rle.getPath())));
+        cases.put("write/" + name + " BI_RGB", ignored -> BmpWriter.write(output.getPath(), image));
+        cases.put("write/" + name + " RLE", ignored -> BmpWriter.writeRle(output.getPath(), image));
+        return cases;
+    }
+
+    private static void measure(String name, Case task, BmpImage source, int warmup, int iterations) {
+        long[] times = new long[iterations];
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        try {
+            for (int i = 0; i < warmup + iterations; i++) {
+                BmpImage image = source.copy();
+                long start = System.nanoTime();
+                task.run(image);
+                long elapsed = System.nanoTime() - start;
+                consume(image);
+                if (i >= warmup) times[i - warmup] = elapsed;
+            }
+        } catch (Exception e) {
+            System.setOut(out);
+            System.err.println(name + " failed: " + e);
+            return;
+        } finally {
+            System.setOut(out);
+        }
+        Arrays.sort(times);
+        double median = times[iterations / 2] / 1e6;
+        double best = times[0] / 1e6;
+        double megapixels = (double) source.width * source.height / 1e6;
+        report.printf("%-42s %11s %10.2f %10.2f %9.1f%n", name, source.width + "x" + source.height,
+                median, best, megapixels / (median / 1000));
+    }
+
+    private static void consume(BmpImage image) {
+        if (image != null && image.pixels.length > 0) {
+            checksum += image.pixels[image.pixels.length / 2] + image.width;
+        } else if (image != null && image.indexed != null) {
+            checksum += image.indexed.indices[image.indexed.indices.length / 2] + image.width;
+        }
+    }
+
+    // Flat fills, outlined boxes and thin lines on a white background, like diagrams or UI screenshots.
+    // Every colour comes from a fixed palette of the given size, so the image is palettized from the start.
+    private static BmpImage lineArt(int width, int height, int colours) {
+        Random random = new Random(width * 17L + height + colours);
+        int[] palette = new int[colours];
+        palette[0] = 0xFFFFFF;
+        for (int i = 1; i < colours; i++) {
+            palette[i] = random.nextInt(0x1000000);
+        }
+        byte[] indices = new byte[width * height];
+        int boxes = Math.max(4, width * height / 20000);
+        for (int n = 0; n < boxes; n++) {
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            int x1 = Math.min(width, x0 + 4 + random.nextInt(Math.max(1, width / 6)));
+            int y1 = Math.min(height, y0 + 4 + random.nextInt(Math.max(1, height / 6)));
+            byte fill = (byte) random.nextInt(colours);
+            byte border = (byte) random.nextInt(colours);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    boolean edge = y == y0 || y == y1 - 1 || x == x0 || x == x1 - 1;
+                    indices[y * width + x] = edge ? border : fill;
+                }
+            }
+        }
+        // a few diagonal strokes, so not every run lines up with a box
+        for (int n = 0; n < 8; n++) {
+            byte ink = (byte) (1 + random.nextInt(colours - 1));
+            int x0 = random.nextInt(width);
+            for (int y = 0; y < height; y++) {
+                int x = (x0 + y * (n + 1) / 3) % width;
+                indices[y * width + x] = ink;
+            }
+        }
+
+        BmpHeader header = new BmpHeader();
+        header.sigB = 'B';
+        header.sigM = 'M';
+        header.planes = 1;
+        header.headerSize = 40;
+        BmpImage image = new BmpImage(header, new IndexedRaster(palette, indices, width, height));
+        image.UpdateHeader(14, 40);
+        return image;
+    }
+
+    // Smooth gradients with some deterministic noise on top, so HSV sees every hue and the blurs have detail
+    private static BmpImage syntheticImage(int width, int height) {
+        BmpImage image = new BmpImage(new BmpHeader(), width, height);
+        image.header.sigB = 'B';
+        image.header.sigM = 'M';
+        image.header.bitsPerPixel = 24;
+        image.header.planes = 1;
+        image.UpdateHeader(14, 40);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / Math.max(1, width - 1) + random.nextInt(32)) & 0xFF;
+                int g = (y * 255 / Math.max(1, height - 1) + random.nextInt(32)) & 0xFF;
+                int b = ((x + y) * 255 / Math.max(1, width + height - 2) + random.nextInt(32)) & 0xFF;
+                image.pixels[y * width + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,9 @@
+class Command {
+    int filterId;
+    int strength;
+
+    Command(int filterId, int strength) {
+        this.filterId = filterId;
+        this.strength = strength;
+    }
+}
@@ -0,0 +1,13 @@
+class FilterInfo {
+    int id;
+    String name;
+    Object filterObject;
+    String type; // "Filter", "HSV", "Convolution", "Pixelate", "Sequence", "SobelEdge"
+
+    FilterInfo(int id, String name, Object filterObject, String type) {
+        this.id = id;
+        this.name = name;
+        this.filterObject = filterObject;
+        this.type = type;
+    }
+}
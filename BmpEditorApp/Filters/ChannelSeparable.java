@@ -0,0 +1,7 @@
+package Filters;
+
+// Marker for Filters where each output channel depends only on the same input channel and the strength
+// (e.g. negative, brightness, posterize). imageProcessor compiles these into 256-entry lookup tables
+// instead of calling apply() once per pixel.
+public interface ChannelSeparable extends Filters {
+}
@@ -4,4 +4,14 @@ import Models.HSV;
 
 public interface HSVfilters {
     public void apply(HSV pixel,int strength);
+
+    // Allocation-free form that imageProcessor calls: hsv holds {h, s, v} (see HSV.H, HSV.S, HSV.V) and is
+    // changed in place. The default goes through an HSV object so older filters keep working.
+    default void apply(double[] hsv, int strength) {
+        HSV pixel = new HSV(hsv[HSV.H], hsv[HSV.S], hsv[HSV.V]);
+        apply(pixel, strength);
+        hsv[HSV.H] = pixel.h;
+        hsv[HSV.S] = pixel.s;
+        hsv[HSV.V] = pixel.v;
+    }
 }
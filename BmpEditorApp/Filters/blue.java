@@ -4,7 +4,7 @@ import Models.Pixel;
 
 import java.io.Serializable;
 
-public class blue implements Filters{
+public class blue implements ChannelSeparable{
     @Override
     public void apply(Pixel p,int Strength) {
         if(p.blue + Strength < 255)
@@ -2,7 +2,7 @@ package Filters;
 
 import Models.Pixel;
 
-public class brightness implements Filters{
+public class brightness implements ChannelSeparable{
 
     @Override
     public void apply(Pixel pixel, int Strength) {
@@ -2,7 +2,7 @@ package Filters;
 
 import Models.Pixel;
 
-public class darken implements Filters{
+public class darken implements ChannelSeparable{
 
     @Override
     public void apply(Pixel pixel, int Strength) {
@@ -6,6 +6,15 @@ public class hue implements HSVfilters{
 
     @Override
     public void apply(HSV pixel, int strength) {
-        pixel.h = (pixel.h+strength) % 360;
+        pixel.h = shift(pixel.h, strength);
+    }
+
+    @Override
+    public void apply(double[] hsv, int strength) {
+        hsv[HSV.H] = shift(hsv[HSV.H], strength);
+    }
+
+    private static double shift(double h, int strength) {
+        return (h+strength) % 360;
     }
 }
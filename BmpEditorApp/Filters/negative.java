@@ -2,7 +2,7 @@ package Filters;
 
 import Models.Pixel;
 
-public class negative implements Filters{
+public class negative implements ChannelSeparable{
     @Override
     public void apply(Pixel pixel, int Strength) {
         pixel.red=255-pixel.red;
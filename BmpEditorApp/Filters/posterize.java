@@ -2,7 +2,7 @@ package Filters;
 
 import Models.Pixel;
 
-public class posterize implements Filters{
+public class posterize implements ChannelSeparable{
 
     @Override
     public void apply(Pixel pixel, int Strength) {
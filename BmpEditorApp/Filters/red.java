@@ -4,7 +4,7 @@ import Models.Pixel;
 
 import java.io.Serializable;
 
-public class red implements Filters{
+public class red implements ChannelSeparable{
     @Override
     public void apply(Pixel p,int Strength) {
         if(p.red + Strength < 255)
@@ -5,9 +5,17 @@ import Models.HSV;
 public class saturation implements HSVfilters{
     @Override
     public void apply(HSV pixel, int strength) {
+        pixel.s = adjust(pixel.s, strength);
+    }
+
+    @Override
+    public void apply(double[] hsv, int strength) {
+        hsv[HSV.S] = adjust(hsv[HSV.S], strength);
+    }
+
+    private static double adjust(double s_orig, int strength) {
         double normStrength = strength / 100.0;
         double s_new;
-        double s_orig=pixel.s;
         if(normStrength >= 0)
         {
             s_new = s_orig + (1.0 - s_orig) * normStrength;
@@ -16,7 +24,6 @@ public class saturation implements HSVfilters{
         {
             s_new = s_orig * (1.0 + normStrength);
         }
-        s_new = Math.max(0.0, Math.min(1.0, s_new));
-        pixel.s = s_new;
+        return Math.max(0.0, Math.min(1.0, s_new));
     }
 }
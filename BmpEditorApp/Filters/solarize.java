@@ -2,7 +2,7 @@ package Filters;
 
 import Models.Pixel;
 
-public class solarize implements Filters{
+public class solarize implements ChannelSeparable{
     @Override
     public void apply(Pixel pixel, int Strength) {
         if(pixel.red>Strength) pixel.red=255-pixel.red;
@@ -5,10 +5,20 @@ import Models.HSV;
 public class value implements HSVfilters{
     @Override
     public void apply(HSV pixel, int strength)
+    {
+        pixel.v = adjust(pixel.v, strength);
+    }
+
+    @Override
+    public void apply(double[] hsv, int strength)
+    {
+        hsv[HSV.V] = adjust(hsv[HSV.V], strength);
+    }
+
+    private static double adjust(double v_orig, int strength)
     {
         double normStrength = strength / 100.0;
         double v_new;
-        double v_orig=pixel.v;
         if(normStrength >= 0)
         {
             v_new = v_orig + (1.0 - v_orig) * normStrength;
@@ -17,7 +27,6 @@ public class value implements HSVfilters{
         {
             v_new = v_orig * (1.0 + normStrength);
         }
-        v_new = Math.max(0.0, Math.min(1.0, v_new));
-        pixel.v = v_new;
+        return Math.max(0.0, Math.min(1.0, v_new));
     }
 }
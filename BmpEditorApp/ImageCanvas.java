@@ -0,0 +1,481 @@
+import Models.BmpImage;
+import Models.Pixel;
+import imageProcessors.ParallelRows;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Draws a BmpImage at any zoom by rendering only the tiles the viewport can see.
+//
+// Zoom levels work like a pyramid: level k is the image averaged down by 2^k in each direction. Painting picks
+// the smallest level that is still at least as big as the on-screen size and lets Graphics2D scale it the rest
+// of the way (less than 2x down, or up when zoomed past 1:1). No level is ever built whole: each TILE x TILE
+// tile of a level is made the first time it comes into view and kept in an LRU cache capped in megabytes
+// (-Dbmpeditor.tileCacheMB, 64 by default). What the canvas holds on to therefore depends on the cap and the
+// window size, not on how big the image is.
+//
+// Painting never renders. Missing tiles are handed to a background thread and the spot is filled meanwhile with
+// the old tile if the image was just swapped for a same-sized one (a new preview), else the same area from the
+// nearest coarser level that is cached, else the background. A visible tile is built from the four level k - 1
+// tiles under it, so zooming out by a level costs one 2x2 average of cached tiles; those level k - 1 tiles are
+// cached on the way, and made by averaging the raster directly when they weren't there.
+class ImageCanvas extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int TILE = 256;
+    private static final int[] RGB_MASKS = { 0xFF0000, 0x00FF00, 0x0000FF };
+    private static final ColorModel RGB_MODEL = new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+
+    // one thread is enough, it spreads each batch of tiles over ParallelRows
+    private static final ExecutorService TILE_RENDERER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tile-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxCachedTiles = Math.max(16, (int) (tileCacheBytes() / (TILE * TILE * 4L)));
+    // key is level, tile row and tile column packed into a long; access order, so the eldest entry is the LRU one.
+    // Shared with the render thread, so only touched while holding its lock.
+    private final LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+            return size() > maxCachedTiles;
+        }
+    };
+    private int[] tilePixels;   // the raster the cached tiles came from, to notice a swapped raster (guarded by tiles)
+
+    // EDT only. The tiles in view at the current level: kept here as well as in the cache so a view that needs more
+    // tiles than the cache holds still shows all of them, instead of evicting and re-requesting them forever.
+    private Map<Long, Tile> shownTiles = new HashMap<>();
+    // EDT only. What was on screen before the image was swapped for a same-sized one, drawn until the new tiles come
+    private Map<Long, Tile> staleTiles = new HashMap<>();
+
+    // the newest batch of missing tiles, replaced by each paint that finds some; the render thread takes it from here
+    private final AtomicReference<TileRequest> request = new AtomicReference<>();
+    private final AtomicBoolean rendering = new AtomicBoolean();
+
+    private BmpImage image;
+    private int displayWidth;
+    private int displayHeight;
+    private String message;
+
+    ImageCanvas() {
+        setOpaque(true);
+        setBackground(Color.LIGHT_GRAY);
+    }
+
+    private static long tileCacheBytes() {
+        String configured = System.getProperty("bmpeditor.tileCacheMB");
+        if (configured != null) {
+            try {
+                return Math.max(1, Long.parseLong(configured.trim())) << 20;
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad bmpeditor.tileCacheMB value: " + configured);
+            }
+        }
+        return 64L << 20;
+    }
+
+    // The image must not be modified in place while it is shown (every filter in the editor works on a copy);
+    // call invalidateTiles() if it is.
+    void setImage(BmpImage image, int displayWidth, int displayHeight) {
+        if (image != this.image || image.pixels != tilePixels) {
+            boolean sameSize = this.image != null && this.image.width == image.width && this.image.height == image.height;
+            this.image = image;
+            invalidateTiles();
+            if (!sameSize) staleTiles.clear();
+        }
+        this.message = null;
+        this.displayWidth = displayWidth;
+        this.displayHeight = displayHeight;
+        setPreferredSize(new Dimension(displayWidth, displayHeight));
+        repaint();
+    }
+
+    void showMessage(String message) {
+        this.image = null;
+        this.message = message;
+        invalidateTiles();
+        repaint();
+    }
+
+    void invalidateTiles() {
+        synchronized (tiles) {
+            tiles.clear();
+            tilePixels = image == null ? null : image.pixels;
+        }
+        request.set(null);
+        staleTiles.putAll(shownTiles);
+        shownTiles = new HashMap<>();
+        if (image == null) staleTiles.clear();
+    }
+
+    // Where the image sits inside the component: centred when the viewport is bigger than it
+    Rectangle imageBounds() {
+        return new Rectangle(Math.max(0, (getWidth() - displayWidth) / 2), Math.max(0, (getHeight() - displayHeight) / 2),
+                displayWidth, displayHeight);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (image == null) {
+            if (message != null) {
+                g.setColor(getForeground());
+                FontMetrics metrics = g.getFontMetrics();
+                g.drawString(message, (getWidth() - metrics.stringWidth(message)) / 2, getHeight() / 2);
+            }
+            return;
+        }
+        Rectangle bounds = imageBounds();
+        Rectangle view = bounds.intersection(getVisibleRect());
+        Rectangle clip = bounds.intersection(g.getClipBounds() != null ? g.getClipBounds() : view);
+        if (view.isEmpty()) return;
+
+        int level = levelFor((double) displayWidth / image.width);
+        int levelWidth = levelSize(image.width, level);
+        int levelHeight = levelSize(image.height, level);
+        // screen pixels per level pixel
+        double scaleX = (double) bounds.width / levelWidth;
+        double scaleY = (double) bounds.height / levelHeight;
+
+        // Tiles are looked up for the whole view, not just the clip: a scroll repaints only the strip that came
+        // into view, and its request must not drop tiles elsewhere on screen that are still on their way
+        int[] inView = tileRange(view, bounds, scaleX, scaleY, levelWidth, levelHeight);
+        shownTiles.keySet().removeIf(key -> !inRange(key, level, inView));
+        staleTiles.keySet().removeIf(key -> !inRange(key, level, inView));
+        List<int[]> missing = new ArrayList<>();
+        for (int row = inView[2]; row <= inView[3]; row++) {
+            for (int column = inView[0]; column <= inView[1]; column++) {
+                long key = key(level, column, row);
+                if (shownTiles.containsKey(key)) continue;
+                Tile tile = cached(key);
+                if (tile != null) {
+                    shownTiles.put(key, tile);
+                    staleTiles.remove(key);
+                } else {
+                    missing.add(new int[] { column, row });
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            requestTiles(new TileRequest(image, level, missing));
+        }
+
+        int[] inClip = tileRange(clip, bounds, scaleX, scaleY, levelWidth, levelHeight);
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for (int row = inClip[2]; row <= inClip[3]; row++) {
+                for (int column = inClip[0]; column <= inClip[1]; column++) {
+                    int tileWidth = Math.min(TILE, levelWidth - column * TILE);
+                    int tileHeight = Math.min(TILE, levelHeight - row * TILE);
+                    // edges are rounded from the level coordinates so neighbouring tiles meet without gaps
+                    int x0 = bounds.x + (int) Math.floor(column * TILE * scaleX);
+                    int y0 = bounds.y + (int) Math.floor(row * TILE * scaleY);
+                    int x1 = bounds.x + (int) Math.floor((column * TILE + tileWidth) * scaleX);
+                    int y1 = bounds.y + (int) Math.floor((row * TILE + tileHeight) * scaleY);
+                    x1 = Math.max(x0 + 1, x1);
+                    y1 = Math.max(y0 + 1, y1);
+                    long key = key(level, column, row);
+                    Tile tile = shownTiles.get(key);
+                    if (tile == null) tile = staleTiles.get(key);
+                    if (tile != null) {
+                        g2.drawImage(tile.image, x0, y0, x1 - x0, y1 - y0, null);
+                    } else {
+                        drawCoarser(g2, level, column, row, tileWidth, tileHeight, x0, y0, x1, y1);
+                    }
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    // First and last tile column, then first and last tile row, covering the given part of the image bounds
+    private static int[] tileRange(Rectangle area, Rectangle bounds, double scaleX, double scaleY, int levelWidth, int levelHeight) {
+        return new int[] {
+                Math.max(0, (int) ((area.x - bounds.x) / scaleX) / TILE),
+                Math.min((levelWidth - 1) / TILE, (int) ((area.x + area.width - bounds.x) / scaleX) / TILE),
+                Math.max(0, (int) ((area.y - bounds.y) / scaleY) / TILE),
+                Math.min((levelHeight - 1) / TILE, (int) ((area.y + area.height - bounds.y) / scaleY) / TILE) };
+    }
+
+    private static boolean inRange(long key, int level, int[] range) {
+        int column = (int) (key & 0xFFFFFFF);
+        int row = (int) ((key >> 28) & 0xFFFFFFF);
+        return (int) (key >>> 56) == level && column >= range[0] && column <= range[1] && row >= range[2] && row <= range[3];
+    }
+
+    // Stand-in for a tile that isn't rendered yet: its area cut out of the nearest coarser level that's cached,
+    // blurry but in the right place. Leaves the background if there is none.
+    private void drawCoarser(Graphics2D g2, int level, int column, int row, int tileWidth, int tileHeight,
+                             int x0, int y0, int x1, int y1) {
+        for (int coarser = level + 1, shift = 1; coarser <= maxLevel(); coarser++, shift++) {
+            Tile tile = cached(key(coarser, column >> shift, row >> shift));
+            if (tile == null) continue;
+            int sourceX0 = ((column * TILE) >> shift) - (column >> shift) * TILE;
+            int sourceY0 = ((row * TILE) >> shift) - (row >> shift) * TILE;
+            int sourceX1 = Math.min(tile.width, sourceX0 + Math.max(1, (tileWidth + (1 << shift) - 1) >> shift));
+            int sourceY1 = Math.min(tile.height, sourceY0 + Math.max(1, (tileHeight + (1 << shift) - 1) >> shift));
+            g2.drawImage(tile.image, x0, y0, x1, y1, sourceX0, sourceY0, sourceX1, sourceY1, null);
+            return;
+        }
+    }
+
+    // Posts the batch for the render thread, replacing any batch it hasn't started on, and starts the thread's
+    // loop unless it is already running
+    private void requestTiles(TileRequest next) {
+        request.set(next);
+        if (rendering.compareAndSet(false, true)) {
+            TILE_RENDERER.execute(this::renderRequests);
+        }
+    }
+
+    // Render thread: works through batches until no new one is waiting
+    private void renderRequests() {
+        while (true) {
+            TileRequest next = request.getAndSet(null);
+            if (next == null) {
+                rendering.set(false);
+                // a batch posted between the getAndSet and clearing the flag found the loop still running
+                if (request.get() == null || !rendering.compareAndSet(false, true)) return;
+                continue;
+            }
+            try {
+                render(next);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void render(TileRequest batch) {
+        List<int[]> missing = batch.tiles;
+        Tile[] rendered = new Tile[missing.size()];
+        ParallelRows.forEachRowRange(missing.size(), TILE * TILE * 4, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                // the view moved on; whatever is still missing is in the newer batch
+                if (request.get() != null) return;
+                rendered[i] = tile(batch, batch.level, missing.get(i)[0], missing.get(i)[1], true);
+            }
+        });
+        SwingUtilities.invokeLater(() -> {
+            if (image != batch.image || image.pixels != batch.pixels) return;
+            for (int i = 0; i < rendered.length; i++) {
+                if (rendered[i] != null) shownTiles.put(key(batch.level, missing.get(i)[0], missing.get(i)[1]), rendered[i]);
+            }
+            repaint();
+        });
+    }
+
+    // One tile, from the cache if it's there. Otherwise built from the (up to) four tiles under it one level down
+    // when split is set or those are all cached, else averaged straight from the raster. Caches what it makes.
+    private Tile tile(TileRequest source, int level, int column, int row, boolean split) {
+        long key = key(level, column, row);
+        Tile tile = cached(key);
+        if (tile != null) return tile;
+        if (level > 0 && (split || childrenCached(source, level, column, row))) {
+            tile = fromChildren(source, level, column, row);
+        } else {
+            tile = average(source, level, column, row);
+        }
+        synchronized (tiles) {
+            if (tilePixels == source.pixels) tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private boolean childrenCached(TileRequest source, int level, int column, int row) {
+        int childWidth = levelSize(source.width, level - 1);
+        int childHeight = levelSize(source.height, level - 1);
+        synchronized (tiles) {
+            for (int childRow = row * 2; childRow <= row * 2 + 1 && childRow * TILE < childHeight; childRow++) {
+                for (int childColumn = column * 2; childColumn <= column * 2 + 1 && childColumn * TILE < childWidth; childColumn++) {
+                    if (!tiles.containsKey(key(level - 1, childColumn, childRow))) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Each pixel is the rounded mean of the 2x2 pixels under it one level down (fewer along the right and bottom
+    // edges). Against averaging the whole raster block at once that's a level or so off from the rounding, a few
+    // more in the last row and column of an odd-sized image where the parts aren't weighted by size. Nothing
+    // anyone sees in a zoomed-out view.
+    private Tile fromChildren(TileRequest source, int level, int column, int row) {
+        int childLevelWidth = levelSize(source.width, level - 1);
+        int childLevelHeight = levelSize(source.height, level - 1);
+        int tileWidth = Math.min(TILE, levelSize(source.width, level) - column * TILE);
+        int tileHeight = Math.min(TILE, levelSize(source.height, level) - row * TILE);
+        int[] out = new int[tileWidth * tileHeight];
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            int childColumn = column * 2 + (quadrant & 1);
+            int childRow = row * 2 + (quadrant >> 1);
+            if (childColumn * TILE >= childLevelWidth || childRow * TILE >= childLevelHeight) continue;
+            Tile child = tile(source, level - 1, childColumn, childRow, false);
+            int[] in = child.pixels;
+            int offsetX = (quadrant & 1) * (TILE / 2);
+            int offsetY = (quadrant >> 1) * (TILE / 2);
+            for (int y = 0; y < (child.height + 1) / 2; y++) {
+                int sourceY0 = y * 2;
+                int sourceY1 = Math.min(sourceY0 + 2, child.height);
+                for (int x = 0; x < (child.width + 1) / 2; x++) {
+                    int sourceX0 = x * 2;
+                    int sourceX1 = Math.min(sourceX0 + 2, child.width);
+                    int r = 0, g = 0, b = 0;
+                    for (int sy = sourceY0; sy < sourceY1; sy++) {
+                        for (int sx = sourceX0; sx < sourceX1; sx++) {
+                            int p = in[sy * child.width + sx];
+                            r += (p >> 16) & 0xFF;
+                            g += (p >> 8) & 0xFF;
+                            b += p & 0xFF;
+                        }
+                    }
+                    int count = (sourceX1 - sourceX0) * (sourceY1 - sourceY0);
+                    int half = count / 2;
+                    out[(offsetY + y) * tileWidth + offsetX + x] = Pixel.pack((r + half) / count, (g + half) / count, (b + half) / count);
+                }
+            }
+        }
+        return new Tile(out, tileWidth, tileHeight);
+    }
+
+    // Averages each 2^level x 2^level block of the raster behind the tile into one pixel.
+    // Blocks hanging off the right or bottom edge average only the pixels that exist.
+    private static Tile average(TileRequest source, int level, int column, int row) {
+        int width = source.width;
+        int height = source.height;
+        int[] pixels = source.pixels;
+        int startX = column * TILE;
+        int startY = row * TILE;
+        int tileWidth = Math.min(TILE, levelSize(width, level) - startX);
+        int tileHeight = Math.min(TILE, levelSize(height, level) - startY);
+        int[] out = new int[tileWidth * tileHeight];
+
+        if (level == 0) {
+            for (int y = 0; y < tileHeight; y++) {
+                System.arraycopy(pixels, (startY + y) * width + startX, out, y * tileWidth, tileWidth);
+            }
+            return new Tile(out, tileWidth, tileHeight);
+        }
+
+        int block = 1 << level;
+        long[] sums = new long[tileWidth * 3];
+        for (int y = 0; y < tileHeight; y++) {
+            int sourceY0 = (startY + y) << level;
+            int sourceY1 = Math.min(sourceY0 + block, height);
+            Arrays.fill(sums, 0);
+            for (int sy = sourceY0; sy < sourceY1; sy++) {
+                int rowStart = sy * width;
+                for (int x = 0; x < tileWidth; x++) {
+                    int sourceX0 = (startX + x) << level;
+                    int sourceX1 = Math.min(sourceX0 + block, width);
+                    long r = 0, g = 0, b = 0;
+                    for (int sx = sourceX0; sx < sourceX1; sx++) {
+                        int p = pixels[rowStart + sx];
+                        r += (p >> 16) & 0xFF;
+                        g += (p >> 8) & 0xFF;
+                        b += p & 0xFF;
+                    }
+                    sums[x * 3] += r;
+                    sums[x * 3 + 1] += g;
+                    sums[x * 3 + 2] += b;
+                }
+            }
+            for (int x = 0; x < tileWidth; x++) {
+                int sourceX0 = (startX + x) << level;
+                long count = (long) (Math.min(sourceX0 + block, width) - sourceX0) * (sourceY1 - sourceY0);
+                long half = count / 2;
+                out[y * tileWidth + x] = Pixel.pack((int) ((sums[x * 3] + half) / count),
+                        (int) ((sums[x * 3 + 1] + half) / count), (int) ((sums[x * 3 + 2] + half) / count));
+            }
+        }
+        return new Tile(out, tileWidth, tileHeight);
+    }
+
+    private Tile cached(long key) {
+        synchronized (tiles) {
+            return tiles.get(key);
+        }
+    }
+
+    // Coarsest level levelFor can pick
+    private int maxLevel() {
+        int level = 0;
+        while ((image.width >> (level + 1)) > 0 && (image.height >> (level + 1)) > 0) level++;
+        return level;
+    }
+
+    // Smallest level whose size is still >= scale times the full image
+    private int levelFor(double scale) {
+        int level = 0;
+        while (scale * 2 <= 1.0 && (image.width >> (level + 1)) > 0 && (image.height >> (level + 1)) > 0) {
+            scale *= 2;
+            level++;
+        }
+        return level;
+    }
+
+    private static int levelSize(int size, int level) {
+        return (int) (((long) size + (1L << level) - 1) >> level);
+    }
+
+    private static long key(int level, int column, int row) {
+        return ((long) level << 56) | ((long) row << 28) | column;
+    }
+
+    // A TYPE_INT_RGB-compatible image whose DataBufferInt is the given array, no copy
+    private static BufferedImage wrap(int[] pixels, int width, int height) {
+        DataBufferInt buffer = new DataBufferInt(pixels, pixels.length);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, RGB_MASKS, null);
+        return new BufferedImage(RGB_MODEL, raster, false, null);
+    }
+
+    // A rendered tile: its packed pixels for building the next level up, and the same array wrapped for drawing
+    private static final class Tile {
+        final int[] pixels;
+        final int width;
+        final int height;
+        final BufferedImage image;
+
+        Tile(int[] pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.image = wrap(pixels, width, height);
+        }
+    }
+
+    // The tiles one paint found missing, with the raster they come from captured on the EDT
+    private static final class TileRequest {
+        final BmpImage image;
+        final int[] pixels;
+        final int width;
+        final int height;
+        final int level;
+        final List<int[]> tiles;
+
+        TileRequest(BmpImage image, int level, List<int[]> tiles) {
+            this.image = image;
+            this.pixels = image.pixels;
+            this.width = image.width;
+            this.height = image.height;
+            this.level = level;
+            this.tiles = tiles;
+        }
+    }
+}
@@ -4,6 +4,13 @@ public class Kernel {
     public final double[][] matrix;
     public final double divisor;
     public final int offset;
+    // matrix == columnVector (outer product) rowVector when the kernel is separable, both null otherwise
+    public final double[] columnVector;
+    public final double[] rowVector;
+    // int copies of the weights when they are all whole numbers, so convolution can accumulate in ints. null otherwise
+    public final int[][] integerMatrix;
+    public final int[] integerColumn;
+    public final int[] integerRow;
 
     // Constructor
     public Kernel(double[][] matrix, double divisor, int offset) {
@@ -18,5 +25,112 @@ public class Kernel {
         this.matrix = matrix;
         this.divisor = divisor;
         this.offset = offset;
+
+        double[][] factors = factorise(matrix);
+        this.columnVector = factors == null ? null : factors[0];
+        this.rowVector = factors == null ? null : factors[1];
+        this.integerMatrix = toIntegers(matrix);
+        this.integerColumn = toIntegers(columnVector);
+        this.integerRow = integerColumn == null ? null : toIntegers(rowVector);
+    }
+
+    // Builds a separable kernel straight from its column and row vectors
+    public Kernel(double[] columnVector, double[] rowVector, double divisor, int offset) {
+        if (columnVector == null || rowVector == null || columnVector.length == 0 || rowVector.length == 0) {
+            throw new IllegalArgumentException("Kernel vectors cannot be null or empty.");
+        }
+        if (columnVector.length % 2 == 0 || rowVector.length % 2 == 0) {
+            System.err.println("Warning: Kernel dimensions should ideally be odd (e.g., 3x3, 5x5).");
+        }
+        double[][] outer = new double[columnVector.length][rowVector.length];
+        for (int y = 0; y < columnVector.length; y++) {
+            for (int x = 0; x < rowVector.length; x++) {
+                outer[y][x] = columnVector[y] * rowVector[x];
+            }
+        }
+        this.matrix = outer;
+        this.divisor = divisor;
+        this.offset = offset;
+        this.columnVector = columnVector.clone();
+        this.rowVector = rowVector.clone();
+        this.integerMatrix = toIntegers(outer);
+        this.integerColumn = toIntegers(columnVector);
+        this.integerRow = integerColumn == null ? null : toIntegers(rowVector);
+    }
+
+    public boolean isSeparable() {
+        return rowVector != null;
+    }
+
+    public boolean isIntegral() {
+        return integerMatrix != null;
+    }
+
+    private static int[][] toIntegers(double[][] weights) {
+        int[][] result = new int[weights.length][];
+        for (int y = 0; y < weights.length; y++) {
+            result[y] = toIntegers(weights[y]);
+            if (result[y] == null) return null;
+        }
+        return result;
+    }
+
+    private static int[] toIntegers(double[] weights) {
+        if (weights == null) return null;
+        int[] result = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            double w = weights[i];
+            if (w != Math.rint(w) || Math.abs(w) > (1 << 23)) return null;
+            result[i] = (int) w;
+        }
+        return result;
+    }
+
+    // Checks whether the matrix is rank 1. Takes the row holding the largest weight as the row vector
+    // and that weight's column (scaled down by it) as the column vector, then checks every entry.
+    private static double[][] factorise(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        int pivotY = 0, pivotX = 0;
+        double largest = 0;
+        for (int y = 0; y < rows; y++) {
+            if (matrix[y] == null || matrix[y].length != cols) return null; // ragged, leave it to the 2D path
+            for (int x = 0; x < cols; x++) {
+                if (Math.abs(matrix[y][x]) > largest) {
+                    largest = Math.abs(matrix[y][x]);
+                    pivotY = y;
+                    pivotX = x;
+                }
+            }
+        }
+        if (largest == 0) return null;
+
+        double pivot = matrix[pivotY][pivotX];
+        double[] row = matrix[pivotY].clone();
+        double[] column = new double[rows];
+        for (int y = 0; y < rows; y++) {
+            column[y] = matrix[y][pivotX] / pivot;
+        }
+        double tolerance = largest * 1e-9;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                if (Math.abs(column[y] * row[x] - matrix[y][x]) > tolerance) return null;
+            }
+        }
+
+        // Move the scale so the column's smallest weight is 1. Integer kernels like {1,2,1}x{-1,0,1}
+        // then come out with integer vectors instead of {0.5,1,0.5}x{-2,0,2}
+        double smallest = 0;
+        for (double c : column) {
+            if (c != 0 && (smallest == 0 || Math.abs(c) < smallest)) smallest = Math.abs(c);
+        }
+        double[] scaledColumn = new double[rows];
+        double[] scaledRow = new double[cols];
+        for (int y = 0; y < rows; y++) scaledColumn[y] = column[y] / smallest;
+        for (int x = 0; x < cols; x++) scaledRow[x] = row[x] * smallest;
+        if (toIntegers(scaledColumn) != null && toIntegers(scaledRow) != null) {
+            return new double[][]{scaledColumn, scaledRow};
+        }
+        return new double[][]{column, row};
     }
 }
@@ -72,6 +72,14 @@ public class Kernels {
             0
     );
 
+    // Built from its 1D binomial factors, so convolution runs it as two 9-tap passes
+    public static final Kernel SEPARABLE_GAUSSIAN_BLUR_9x9 = new Kernel(
+            new double[]{1, 8, 28, 56, 70, 56, 28, 8, 1},
+            new double[]{1, 8, 28, 56, 70, 56, 28, 8, 1},
+            65536.0, // 256 * 256, the sum of all weights
+            0
+    );
+
     public static final Kernel SOBEL_X = new Kernel(
             new double[][]{
                     {-1, 0, 1},
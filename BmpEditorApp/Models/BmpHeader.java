@@ -50,6 +50,14 @@ public class BmpHeader {
         this.importantColors = importantColors;
     }
 
+    public BmpHeader copy()
+    {
+        return new BmpHeader(sigB, sigM, fileSize, reserved1, reserved2, pixelOffset,
+                headerSize, width, height, planes, bitsPerPixel,
+                compression, imageSize, xPixelsPerMeter, yPixelsPerMeter,
+                colorsInColorTable, importantColors);
+    }
+
     @Override
     public String toString() {
         return  "Signature: " + (char)sigB + (char)sigM + "\n" +
@@ -1,32 +1,131 @@
 package Models;
 
 public class BmpImage {
-    //has both header and the pixelGrid
+    //has both header and the pixel raster
     public BmpHeader header;
-    public Pixel[][] pixelGrid;
+    // one packed 0x00RRGGBB int per pixel, row-major with the top row first (index = y * width + x)
+    public int[] pixels;
+    // raster dimensions. height is always positive here, header.height can be negative for top-down files
+    public int width;
+    public int height;
+    // set for palettized images: the pixels live in here as palette indices and `pixels` stays empty
+    // until something that needs RGB calls expandIndexed()
+    public IndexedRaster indexed;
 
     public BmpImage(BmpHeader header,int width, int height)
     {
         this.header=header;
-        this.pixelGrid = new Pixel[height][width];
+        this.width = width;
+        this.height = Math.abs(height);
+        this.pixels = new int[this.width * this.height];
+    }
+    public BmpImage(BmpHeader header, int width, int height, int[] pixels)
+    {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Raster size does not match " + width + "x" + height);
+        }
+        this.header = header;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+    public BmpImage(BmpHeader header, IndexedRaster indexed)
+    {
+        this.header = header;
+        this.width = indexed.width;
+        this.height = indexed.height;
+        this.indexed = indexed;
+        this.pixels = new int[0];
     }
     public BmpImage()
     {
         this.header = new BmpHeader();
-        this.pixelGrid = new Pixel[header.height][header.width];
+        this.pixels = new int[0];
     }
+
+    public int getRGB(int x, int y)
+    {
+        if (indexed != null) return indexed.getRGB(x, y);
+        return pixels[y * width + x];
+    }
+
+    public void setRGB(int x, int y, int rgb)
+    {
+        expandIndexed();
+        pixels[y * width + x] = rgb;
+    }
+
+    public boolean isIndexed()
+    {
+        return indexed != null;
+    }
+
+    // Turns a palettized image into a plain 24-bit one. Does nothing if it already is one.
+    public void expandIndexed()
+    {
+        if (indexed == null) return;
+        pixels = indexed.toRgb();
+        indexed = null;
+        header.bitsPerPixel = 24;
+        header.compression = 0;
+        header.colorsInColorTable = 0;
+        header.importantColors = 0;
+    }
+
+    // Compatibility accessor for code that still wants a Pixel. Allocates, so keep it out of hot loops.
+    public Pixel getPixel(int x, int y)
+    {
+        Pixel p = new Pixel(0, 0, 0);
+        p.load(getRGB(x, y));
+        return p;
+    }
+
+    public void setPixel(int x, int y, Pixel p)
+    {
+        expandIndexed();
+        pixels[y * width + x] = p == null ? 0 : p.pack();
+    }
+
+    // Swaps in a new raster, e.g. after a rotation changed the dimensions. Keeps the header in step.
+    public void setRaster(int[] pixels, int width, int height)
+    {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Raster size does not match " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.indexed = null;
+        this.width = width;
+        this.height = height;
+        this.header.width = width;
+        this.header.height = height;
+    }
+
+    public BmpImage copy()
+    {
+        if (indexed != null) return new BmpImage(header.copy(), indexed.copy());
+        return new BmpImage(header.copy(), width, height, pixels.clone());
+    }
+
     public void UpdateHeader(int FirstSize, int SecondSize)
     {
         this.header.headerSize=SecondSize;
         this.header.pixelOffset= FirstSize +SecondSize;
-        int finalHeight = this.pixelGrid.length;
-        int finalWidth = this.pixelGrid[0].length;
+        int finalHeight = this.height;
+        int finalWidth = this.width;
         this.header.width = finalWidth;
         this.header.height = finalHeight;
+        this.header.compression = 0; // always written uncompressed
         int rowDataSize = finalWidth * 3; // 3 bytes per pixel for 24-bit
+        if (indexed != null) {
+            // palettized images are written as 8-bit with their palette between the headers and the pixels
+            rowDataSize = finalWidth;
+            this.header.bitsPerPixel = 8;
+            this.header.colorsInColorTable = indexed.palette.length;
+            this.header.pixelOffset += indexed.palette.length * 4;
+        }
         int padding = (4 - (rowDataSize % 4)) % 4;
         int stride = rowDataSize + padding;
         this.header.imageSize = stride * finalHeight;
-        this.header.fileSize = FirstSize+SecondSize + this.header.imageSize;
+        this.header.fileSize = this.header.pixelOffset + this.header.imageSize;
     }
 }
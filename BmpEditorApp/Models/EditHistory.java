@@ -0,0 +1,102 @@
+package Models;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Multi-level undo/redo made of ImageSnapshots. Consecutive states share every tile an edit left alone,
+// and memory is counted per distinct tile array, so a tile shared by ten states is paid for once.
+// When the distinct tiles go over the cap the oldest states are dropped (the current one always stays).
+public class EditHistory {
+    private final long maxBytes;
+    private final List<ImageSnapshot> states = new ArrayList<>();
+    private int current = -1;
+    // how many retained states point at each tile array
+    private final Map<int[], Integer> tileRefs = new IdentityHashMap<>();
+    private long bytes;
+
+    public EditHistory(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("History cap must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    // Forgets everything and starts from this image, e.g. after opening a file
+    public void reset(BmpImage image) {
+        states.clear();
+        tileRefs.clear();
+        bytes = 0;
+        current = -1;
+        record(image);
+    }
+
+    // Adds the image as the newest state. Anything that had been undone can no longer be redone.
+    public void record(BmpImage image) {
+        ImageSnapshot previous = current >= 0 ? states.get(current) : null;
+        while (states.size() > current + 1) {
+            release(states.remove(states.size() - 1));
+        }
+        ImageSnapshot snapshot = new ImageSnapshot(image, previous);
+        states.add(snapshot);
+        retain(snapshot);
+        current = states.size() - 1;
+        while (bytes > maxBytes && current > 0) {
+            release(states.remove(0));
+            current--;
+        }
+    }
+
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    public boolean canRedo() {
+        return current >= 0 && current < states.size() - 1;
+    }
+
+    // The state before the current one, as a new image. null if there is nothing to undo.
+    public BmpImage undo() {
+        if (!canUndo()) return null;
+        current--;
+        return states.get(current).toImage();
+    }
+
+    public BmpImage redo() {
+        if (!canRedo()) return null;
+        current++;
+        return states.get(current).toImage();
+    }
+
+    public int undoDepth() {
+        return Math.max(0, current);
+    }
+
+    public int redoDepth() {
+        return current < 0 ? 0 : states.size() - 1 - current;
+    }
+
+    // bytes held by distinct tiles across all retained states
+    public long memoryUsed() {
+        return bytes;
+    }
+
+    private void retain(ImageSnapshot snapshot) {
+        for (int[] tile : snapshot.tiles) {
+            if (tileRefs.merge(tile, 1, Integer::sum) == 1) {
+                bytes += 4L * tile.length;
+            }
+        }
+    }
+
+    private void release(ImageSnapshot snapshot) {
+        for (int[] tile : snapshot.tiles) {
+            int refs = tileRefs.merge(tile, -1, Integer::sum);
+            if (refs == 0) {
+                tileRefs.remove(tile);
+                bytes -= 4L * tile.length;
+            }
+        }
+    }
+}
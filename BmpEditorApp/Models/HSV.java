@@ -5,6 +5,11 @@ public class HSV {
     public double s; // Saturation (0.0-1.0)
     public double v; // Value (0.0-1.0)
 
+    // slots in the double[3] scratch form used by HSVfilters.apply(double[], int)
+    public static final int H = 0;
+    public static final int S = 1;
+    public static final int V = 2;
+
     public HSV(double h, double s, double v) {
         this.h = h;
         this.s = s;
@@ -0,0 +1,75 @@
+package Models;
+
+import java.util.Arrays;
+
+// Read-only copy of an image cut into square tiles. A snapshot taken with a predecessor reuses the
+// predecessor's tile arrays wherever the pixels are unchanged, so a local edit (or an edit that only
+// touches part of the picture) stores just the tiles it changed. Tile arrays are never written after
+// construction, which is what makes sharing them between snapshots safe.
+public class ImageSnapshot {
+    public static final int TILE = 128;
+
+    public final int width;
+    public final int height;
+    private final BmpHeader header;
+    private final int tilesAcross;
+    private final int tilesDown;
+    // row-major tile grid; tile (tx, ty) holds its pixels row by row at its own (possibly clipped) width
+    final int[][] tiles;
+
+    public ImageSnapshot(BmpImage image, ImageSnapshot previous) {
+        this.width = image.width;
+        this.height = image.height;
+        this.header = image.header.copy();
+        this.tilesAcross = (width + TILE - 1) / TILE;
+        this.tilesDown = (height + TILE - 1) / TILE;
+        this.tiles = new int[tilesAcross * tilesDown][];
+        // only a same-sized predecessor lines up tile for tile (a rotation, say, shares nothing)
+        boolean comparable = previous != null && previous.width == width && previous.height == height;
+        int[] pixels = image.pixels;
+        for (int ty = 0; ty < tilesDown; ty++) {
+            for (int tx = 0; tx < tilesAcross; tx++) {
+                int index = ty * tilesAcross + tx;
+                int startX = tx * TILE, startY = ty * TILE;
+                int tileWidth = Math.min(TILE, width - startX);
+                int tileHeight = Math.min(TILE, height - startY);
+                if (comparable && sameAs(previous.tiles[index], pixels, startX, startY, tileWidth, tileHeight)) {
+                    tiles[index] = previous.tiles[index];
+                    continue;
+                }
+                int[] tile = new int[tileWidth * tileHeight];
+                for (int y = 0; y < tileHeight; y++) {
+                    System.arraycopy(pixels, (startY + y) * width + startX, tile, y * tileWidth, tileWidth);
+                }
+                tiles[index] = tile;
+            }
+        }
+    }
+
+    private boolean sameAs(int[] tile, int[] pixels, int startX, int startY, int tileWidth, int tileHeight) {
+        for (int y = 0; y < tileHeight; y++) {
+            int from = (startY + y) * width + startX;
+            if (!Arrays.equals(tile, y * tileWidth, (y + 1) * tileWidth, pixels, from, from + tileWidth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A fresh, independent BmpImage with this snapshot's pixels and header
+    public BmpImage toImage() {
+        int[] pixels = new int[width * height];
+        for (int ty = 0; ty < tilesDown; ty++) {
+            for (int tx = 0; tx < tilesAcross; tx++) {
+                int[] tile = tiles[ty * tilesAcross + tx];
+                int startX = tx * TILE, startY = ty * TILE;
+                int tileWidth = Math.min(TILE, width - startX);
+                int tileHeight = tile.length / tileWidth;
+                for (int y = 0; y < tileHeight; y++) {
+                    System.arraycopy(tile, y * tileWidth, pixels, (startY + y) * width + startX, tileWidth);
+                }
+            }
+        }
+        return new BmpImage(header.copy(), width, height, pixels);
+    }
+}
@@ -0,0 +1,84 @@
+package Models;
+
+import java.util.Arrays;
+
+// Pixels of a palettized image: one palette index per pixel, row-major with the top row first (index = y * width + x),
+// plus the palette itself as packed 0x00RRGGBB. 1, 4 and 8 bit BMPs all end up here at a byte per pixel,
+// a quarter of the packed int raster. Point filters only need to touch the palette.
+public class IndexedRaster {
+    public int[] palette;
+    public final byte[] indices;
+    public final int width;
+    public final int height;
+
+    public IndexedRaster(int[] palette, byte[] indices, int width, int height)
+    {
+        if (indices.length != width * height) {
+            throw new IllegalArgumentException("Index raster size does not match " + width + "x" + height);
+        }
+        if (palette.length < 1 || palette.length > 256) {
+            throw new IllegalArgumentException("Palette must have 1 to 256 entries, got " + palette.length);
+        }
+        this.palette = palette;
+        this.indices = indices;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getRGB(int x, int y)
+    {
+        return palette[indices[y * width + x] & 0xFF];
+    }
+
+    // Packed 0x00RRGGBB raster, for the operations that need real pixels
+    public int[] toRgb()
+    {
+        int[] pixels = new int[indices.length];
+        int[] colours = palette;
+        for (int i = 0; i < indices.length; i++)
+        {
+            pixels[i] = colours[indices[i] & 0xFF];
+        }
+        return pixels;
+    }
+
+    // Palettizes a packed 0x00RRGGBB raster without losing anything, colours numbered in order of first use.
+    // Returns null if it has more than 256 distinct colours.
+    public static IndexedRaster fromRgb(int[] pixels, int width, int height)
+    {
+        // open addressing over 512 slots, so it never gets more than half full
+        int[] keys = new int[512];
+        int[] slots = new int[512];
+        Arrays.fill(slots, -1);
+        int[] colours = new int[256];
+        int count = 0;
+        byte[] indices = new byte[pixels.length];
+        int last = -1;
+        int lastIndex = 0;
+        for (int i = 0; i < pixels.length; i++)
+        {
+            int rgb = pixels[i] & 0xFFFFFF;
+            if (rgb != last) {
+                int slot = (rgb * 0x9E3779B9) >>> 23;
+                while (slots[slot] >= 0 && keys[slot] != rgb) {
+                    slot = (slot + 1) & 511;
+                }
+                if (slots[slot] < 0) {
+                    if (count == 256) return null;
+                    keys[slot] = rgb;
+                    slots[slot] = count;
+                    colours[count++] = rgb;
+                }
+                last = rgb;
+                lastIndex = slots[slot];
+            }
+            indices[i] = (byte) lastIndex;
+        }
+        return new IndexedRaster(Arrays.copyOf(colours, Math.max(1, count)), indices, width, height);
+    }
+
+    public IndexedRaster copy()
+    {
+        return new IndexedRaster(palette.clone(), indices.clone(), width, height);
+    }
+}
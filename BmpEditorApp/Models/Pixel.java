@@ -18,7 +18,39 @@ public class Pixel {
         this.alpha=a;
     }
 
+    // Unpacks a 0x00RRGGBB raster value into this pixel. Lets a single scratch Pixel be reused
+    // so the old Filters implementations can run over the packed raster.
+    public void load(int rgb) {
+        this.red = (rgb >> 16) & 0xFF;
+        this.green = (rgb >> 8) & 0xFF;
+        this.blue = rgb & 0xFF;
+    }
+
+    // Packs this pixel back into 0x00RRGGBB, clamping channels that a filter pushed out of 0-255
+    public int pack() {
+        return pack(red, green, blue);
+    }
+
+    public static int pack(int r, int g, int b) {
+        r = Math.max(0, Math.min(255, r));
+        g = Math.max(0, Math.min(255, g));
+        b = Math.max(0, Math.min(255, b));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    public static int red(int rgb) {
+        return (rgb >> 16) & 0xFF;
+    }
+
+    public static int green(int rgb) {
+        return (rgb >> 8) & 0xFF;
+    }
+
+    public static int blue(int rgb) {
+        return rgb & 0xFF;
+    }
+
     public String toString() {
         return "Pixel(R=" + red + ", G=" + green + ", B=" + blue + "Alpha =" + alpha+ ")";
     }
-}
\ No newline at end of file
+}
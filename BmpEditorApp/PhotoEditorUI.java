@@ -4,26 +4,45 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
 // import java.awt.geom.AffineTransform; // Not strictly needed for current zoom
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 // Assuming these are your existing/correct import paths
 import Models.BmpImage;
-import Models.BmpHeader; // For deepCopyBmpImage
-import Models.Pixel;
+import Models.EditHistory;
 import io.BmpReader;
 import io.BmpWriter;
 import Filters.*; // Assuming wildcard import is okay or list them
+import imageProcessors.ParallelRows;
 import imageProcessors.imageProcessor; // Assuming class name is imageProcessor
 import Kernels.Kernel; // For kernel types
 import Kernels.Kernels; // For specific kernels
 
 public class PhotoEditorUI extends JFrame {
-    private JLabel imageLabel;
+    private ImageCanvas imageCanvas;     // Draws the image at the current zoom, see ImageCanvas
     private JScrollPane imageScrollPane; // For scrollability and zoom viewport
     private BmpImage currentImage;       // Last applied state
     private BmpImage originalImageBeforePreview; // Snapshot before a filter preview starts
-    private BmpImage imageForPreview;    // Working copy for live preview
+    private BmpImage imageForPreview;    // Working copy for live preview, full size or a screen-sized proxy
+    private int imageForPreviewValue;    // Slider value imageForPreview was rendered with
+    private int previewValue;            // Slider value most recently asked for, may still be rendering
+
+    // Below 1:1 the preview runs on a copy of the image shrunk to the size it is drawn at, so a slider tick
+    // costs screen pixels rather than file pixels. Kept until the source or the displayed size changes.
+    private BmpImage previewProxy;
+    private BmpImage previewProxySource;
+
+    // Undo/redo over applied states. Consecutive states share unchanged tiles; the cap is in megabytes
+    // (-Dbmpeditor.historyMB), a quarter of the heap by default, and the oldest states go first.
+    private final EditHistory history = new EditHistory(historyCapBytes());
+    private JMenuItem undoItem;
+    private JMenuItem redoItem;
 
     private String currentFilePath;
     private JFileChooser fileChooser;
@@ -54,6 +73,17 @@ public class PhotoEditorUI extends JFrame {
 
     private final ChangeListener sliderChangeListener;
 
+    // Previews and the full-size render on Apply run here so the EDT never waits on a filter.
+    // Every new request bumps renderGeneration: whatever is still running sees it and stops at its next chunk,
+    // anything queued behind it is skipped, and only the newest result gets painted.
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "preview-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger renderGeneration = new AtomicInteger();
+    private boolean applyInProgress = false;
+
 
     public PhotoEditorUI() {
         setTitle("BMP Photo Editor");
@@ -64,14 +94,13 @@ public class PhotoEditorUI extends JFrame {
         // Define the single ChangeListener instance here
         sliderChangeListener = e -> {
             JSlider source = (JSlider) e.getSource();
-            // Only proceed if a filter is active, the slider is meant to be used, and user finished adjusting
+            // Only proceed if a filter is active and the slider is meant to be used
             if (activeFilterKey == null || !source.isVisible() || !controlPanel.isVisible()) {
                 return;
             }
-            if (!source.getValueIsAdjusting()) {
-                updateSliderValueLabel(source.getValue());
-                applyFilterToPreview(activeFilterKey, source.getValue());
-            }
+            // Renders in the background, so previews can follow the drag; each new value supersedes the last
+            updateSliderValueLabel(source.getValue());
+            applyFilterToPreview(activeFilterKey, source.getValue());
         };
 
         initializeComponents();
@@ -80,6 +109,18 @@ public class PhotoEditorUI extends JFrame {
         // initializeFilterInstances(); // Filters are already initialized as final members
     }
 
+    private static long historyCapBytes() {
+        String configured = System.getProperty("bmpeditor.historyMB");
+        if (configured != null) {
+            try {
+                return Math.max(1, Long.parseLong(configured.trim())) << 20;
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad bmpeditor.historyMB value: " + configured);
+            }
+        }
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
     private void initializeFilterInstances() {
         // This method is not strictly needed if filters are declared final and initialized directly.
         // Kept for structure if you change initialization strategy later.
@@ -131,16 +172,16 @@ public class PhotoEditorUI extends JFrame {
     }
 
     private void updateImageHeaderBeforeSave(BmpImage image) {
-        if (image == null || image.pixelGrid == null || image.header == null) {
+        if (image == null || image.pixels == null || image.header == null) {
             System.err.println("Cannot update header: image or its components are null.");
             return;
         }
-        int height = image.pixelGrid.length;
+        int height = image.height;
         if (height == 0) {
             System.err.println("Cannot update header: image height is 0.");
             return;
         }
-        int width = image.pixelGrid[0].length;
+        int width = image.width;
         if (width == 0) {
             System.err.println("Cannot update header: image width is 0.");
             return;
@@ -169,39 +210,14 @@ public class PhotoEditorUI extends JFrame {
         image.header.reserved2 = 0;
     }
 
-    private BmpHeader deepCopyBmpHeader(BmpHeader originalHeader) {
-        if (originalHeader == null) return null;
-        BmpHeader copy = new BmpHeader();
-        copy.fileSize = originalHeader.fileSize;
-        copy.reserved1 = originalHeader.reserved1;
-        copy.reserved2 = originalHeader.reserved2;
-        copy.pixelOffset = originalHeader.pixelOffset;
-        copy.headerSize = originalHeader.headerSize;
-        copy.width = originalHeader.width;
-        copy.height = originalHeader.height;
-        copy.planes = originalHeader.planes;
-        copy.bitsPerPixel = originalHeader.bitsPerPixel;
-        copy.compression = originalHeader.compression;
-        copy.imageSize = originalHeader.imageSize;
-        copy.xPixelsPerMeter = originalHeader.xPixelsPerMeter;
-        copy.yPixelsPerMeter = originalHeader.yPixelsPerMeter;
-        copy.colorsInColorTable = originalHeader.colorsInColorTable;
-        copy.importantColors = originalHeader.importantColors;
-        return copy;
-    }
-
     private void initializeComponents() {
         fileChooser = new JFileChooser();
         fileChooser.setFileFilter(new FileNameExtensionFilter("BMP Files", "bmp"));
 
-        imageLabel = new JLabel();
-        imageLabel.setHorizontalAlignment(JLabel.CENTER);
-        imageLabel.setVerticalAlignment(JLabel.CENTER);
+        imageCanvas = new ImageCanvas();
 
-        imageScrollPane = new JScrollPane(imageLabel);
+        imageScrollPane = new JScrollPane(imageCanvas);
         imageScrollPane.setBackground(Color.DARK_GRAY);
-        imageLabel.setOpaque(true);
-        imageLabel.setBackground(Color.LIGHT_GRAY);
 
         controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
         filterSlider = new JSlider();
@@ -247,6 +263,17 @@ public class PhotoEditorUI extends JFrame {
         fileMenu.add(saveItem);
         fileMenu.add(saveCopyItem);
 
+        JMenu editMenu = new JMenu("Edit");
+        undoItem = new JMenuItem("Undo");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        undoItem.addActionListener(e -> undo());
+        redoItem = new JMenuItem("Redo");
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        redoItem.addActionListener(e -> redo());
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        updateUndoRedoItems();
+
         JMenu viewFilterMenu = new JMenu("Filter");
         addFilterMenuItem(viewFilterMenu, "Greyscale", "GREYSCALE");
         addFilterMenuItem(viewFilterMenu, "Negative", "NEGATIVE");
@@ -264,6 +291,7 @@ public class PhotoEditorUI extends JFrame {
         addFilterMenuItem(adjustmentsMenu, "Sharpen", "SHARPEN");
 
         menuBar.add(fileMenu);
+        menuBar.add(editMenu);
         menuBar.add(viewFilterMenu);
         menuBar.add(hsvMenu);
         menuBar.add(adjustmentsMenu);
@@ -292,21 +320,27 @@ public class PhotoEditorUI extends JFrame {
             try {
                 currentFilePath = file.getAbsolutePath();
                 currentImage = BmpReader.read(currentFilePath);
-                if (currentImage == null || currentImage.header == null || currentImage.pixelGrid == null || currentImage.header.bitsPerPixel != 24) {
-                    JOptionPane.showMessageDialog(this, "Only 24-bit BMP files are supported, or the file is invalid.", "Error", JOptionPane.ERROR_MESSAGE);
-                    currentImage = null; imageLabel.setIcon(null); return;
+                if (currentImage != null && currentImage.header != null) {
+                    currentImage.expandIndexed(); // the editor works in RGB; palettized files are saved back as 24-bit
+                }
+                if (currentImage == null || currentImage.header == null || currentImage.pixels == null || currentImage.header.bitsPerPixel != 24) {
+                    JOptionPane.showMessageDialog(this, "Only 24-bit and 1/4/8-bit palettized BMP files are supported, or the file is invalid.", "Error", JOptionPane.ERROR_MESSAGE);
+                    currentImage = null; imageCanvas.showMessage(null); return;
                 }
                 // TODO: Add check for at least one non-null pixel if necessary
 
                 zoomFactor = 1.0;
                 originalImageBeforePreview = null;
                 imageForPreview = null;
+                dropPreviewProxy();
                 activeFilterKey = null; // Ensure no filter is active
                 controlPanel.setVisible(false); // Hide control panel
+                history.reset(currentImage);
+                updateUndoRedoItems();
                 displayBmpImage(currentImage);
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this, "Error loading image: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                currentImage = null; imageLabel.setIcon(null);
+                currentImage = null; imageCanvas.showMessage(null);
                 e.printStackTrace();
             }
         }
@@ -323,8 +357,10 @@ public class PhotoEditorUI extends JFrame {
         }
 
         activeFilterKey = filterKey;
-        originalImageBeforePreview = deepCopyBmpImage(currentImage);
-        imageForPreview = deepCopyBmpImage(originalImageBeforePreview);
+        // nothing writes to currentImage while a preview is up (every preview works on its own copy),
+        // so it can serve as the "before" state without being copied
+        originalImageBeforePreview = currentImage;
+        imageForPreview = null;
 
         int L_defaultValue = 0; // Using local variables for clarity within the method
         boolean L_makeSliderVisible = true;
@@ -390,7 +426,7 @@ public class PhotoEditorUI extends JFrame {
     }
 
     private void applyFilterToPreview(String filterKey, int value) {
-        if (imageForPreview == null || originalImageBeforePreview == null) {
+        if (originalImageBeforePreview == null) {
             System.err.println("applyFilterToPreview: Preview images not initialized.");
             return;
         }
@@ -402,48 +438,136 @@ public class PhotoEditorUI extends JFrame {
 
         // Always re-apply from the state *before this specific filter preview started*
         // This ensures slider changes don't compound on an already filtered preview image.
-        imageForPreview.pixelGrid = deepCopyPixelGrid(originalImageBeforePreview.pixelGrid, originalImageBeforePreview.header.width, Math.abs(originalImageBeforePreview.header.height));
-        // Header might not need deep copy for each preview step if only pixel data changes,
-        // but it's safer if filter operations *could* modify header (e.g. dimensions, though not here)
-        imageForPreview.header = deepCopyBmpHeader(originalImageBeforePreview.header);
+        // When the image is drawn smaller than 1:1 that state is the screen-sized proxy, not the full raster.
+        // Sizes are worked out here on the EDT, the downsample and the filter run on the render thread.
+        BmpImage full = originalImageBeforePreview;
+        Dimension proxySize = proxySize(full);
+        BmpImage cachedProxy = proxySize != null && previewProxy != null && previewProxySource == full
+                && previewProxy.width == proxySize.width && previewProxy.height == proxySize.height ? previewProxy : null;
+        previewValue = value;
+
+        renderInBackground(() -> {
+            BmpImage proxy = cachedProxy;
+            if (proxySize != null && proxy == null) {
+                proxy = imageProcessor.downsample(full, proxySize.width, proxySize.height);
+            }
+            BmpImage preview = deepCopyBmpImage(proxy != null ? proxy : full);
+            if (!runFilter(preview, filterKey, value)) {
+                return null; // Don't try to display if filter is unknown
+            }
+            return new BmpImage[] { preview, proxy };
+        }, rendered -> {
+            if (rendered == null) return;
+            if (rendered[1] != null) {
+                previewProxy = rendered[1];
+                previewProxySource = full;
+            } else {
+                dropPreviewProxy();
+            }
+            imageForPreview = rendered[0];
+            imageForPreviewValue = value;
+            displayBmpImage(imageForPreview);
+        });
+    }
+
+    // Runs work on the render thread and hands the result to onDone on the EDT, unless a newer request
+    // came in meanwhile. Superseded work stops at its next chunk via ParallelRows' cancellation check.
+    private <T> void renderInBackground(Supplier<T> work, Consumer<T> onDone) {
+        int generation = renderGeneration.incrementAndGet();
+        BooleanSupplier superseded = () -> renderGeneration.get() != generation;
+        renderExecutor.execute(() -> {
+            if (superseded.getAsBoolean()) return; // a newer request is already queued behind this one
+            try {
+                T result = ParallelRows.runCancellable(superseded, work);
+                SwingUtilities.invokeLater(() -> {
+                    if (!superseded.getAsBoolean()) onDone.accept(result);
+                });
+            } catch (CancellationException e) {
+                // superseded part way through, nothing to show
+            } catch (RuntimeException | OutOfMemoryError e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    if (superseded.getAsBoolean()) return;
+                    setApplyInProgress(false);
+                    JOptionPane.showMessageDialog(this, "Error rendering filter: " + e, "Error", JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        });
+    }
+
+    // Stops any render in flight and keeps queued ones from starting
+    private void cancelRendering() {
+        renderGeneration.incrementAndGet();
+        setApplyInProgress(false);
+    }
 
+    private void setApplyInProgress(boolean inProgress) {
+        applyInProgress = inProgress;
+        applyButton.setEnabled(!inProgress);
+        filterSlider.setEnabled(!inProgress);
+        applyButton.setText(inProgress ? "Applying..." : "Apply");
+    }
 
+    private boolean runFilter(BmpImage image, String filterKey, int value) {
         switch (filterKey) {
             case "GREYSCALE":
-                imageProcessor.applyFilter(imageForPreview, greyscaleFilter, 0);
+                imageProcessor.applyFilter(image, greyscaleFilter, 0);
                 break;
             case "NEGATIVE":
-                imageProcessor.applyFilter(imageForPreview, negativeFilter, 0);
+                imageProcessor.applyFilter(image, negativeFilter, 0);
                 break;
             case "POSTERIZE":
-                imageProcessor.applyFilter(imageForPreview, posterizeFilter, value);
+                imageProcessor.applyFilter(image, posterizeFilter, value);
                 break;
             case "THRESHOLD":
-                imageProcessor.applyFilter(imageForPreview, thresholdFilter, value);
+                imageProcessor.applyFilter(image, thresholdFilter, value);
                 break;
             case "HUE":
-                imageProcessor.applyHSVfilter(imageForPreview, hueFilter, value);
+                imageProcessor.applyHSVfilter(image, hueFilter, value);
                 break;
             case "SATURATION":
-                imageProcessor.applyHSVfilter(imageForPreview, saturationFilter, value);
+                imageProcessor.applyHSVfilter(image, saturationFilter, value);
                 break;
             case "VALUE":
-                imageProcessor.applyHSVfilter(imageForPreview, valueFilter, value);
+                imageProcessor.applyHSVfilter(image, valueFilter, value);
                 break;
             case "BLUR_STRONG":
-                imageProcessor.convolution(imageForPreview, strongGaussianKernel);
+                imageProcessor.convolution(image, strongGaussianKernel);
                 break;
             case "SHARPEN":
-                imageProcessor.convolution(imageForPreview, sharpenKernel);
+                imageProcessor.convolution(image, sharpenKernel);
                 break;
             case "COMIC2":
-                applyComic2Effect(imageForPreview);
+                applyComic2Effect(image);
                 break;
             default:
-                System.err.println("Unknown filter key in applyFilterToPreview: " + filterKey);
-                return; // Don't try to display if filter is unknown
+                System.err.println("Unknown filter key: " + filterKey);
+                return false;
+        }
+        return true;
+    }
+
+    // Size of the proxy the preview filter should run on: null at 1:1 and beyond, where every source pixel
+    // reaches the screen and the full raster is used, otherwise the size the image will be drawn at.
+    // Kernels keep their size in proxy pixels, so blur and sharpen previews look stronger than the final result
+    // when zoomed out; the point filters come out the same as the full render, just at screen resolution.
+    private Dimension proxySize(BmpImage full) {
+        double scale = displayScale(full.width, full.height);
+        if (scale >= 1.0) {
+            return null;
         }
-        displayBmpImage(imageForPreview);
+        return new Dimension(Math.max(1, (int) (full.width * scale)), Math.max(1, (int) (full.height * scale)));
+    }
+
+    private void dropPreviewProxy() {
+        previewProxy = null;
+        previewProxySource = null;
+    }
+
+    private boolean previewIsProxy() {
+        return imageForPreview != null && originalImageBeforePreview != null
+                && (imageForPreview.width != originalImageBeforePreview.width
+                || imageForPreview.height != originalImageBeforePreview.height);
     }
 
     private void applyComic2Effect(BmpImage img) {
@@ -462,24 +586,50 @@ public class PhotoEditorUI extends JFrame {
     }
 
     private void applyPreviewChanges() {
-        if (imageForPreview != null) {
-            currentImage = deepCopyBmpImage(imageForPreview); // Make preview permanent
-            imageForPreview = null;
-            originalImageBeforePreview = null;
-            controlPanel.setVisible(false);
-            activeFilterKey = null;
-            displayBmpImage(currentImage);
-            pack();
+        if (originalImageBeforePreview == null || activeFilterKey == null || applyInProgress) {
+            return;
+        }
+        if (imageForPreview != null && !previewIsProxy() && imageForPreviewValue == previewValue) {
+            commitPreview(imageForPreview); // the full-size preview on screen is already the answer
+            return;
         }
+        // the preview only covered screen pixels, or is still rendering; do the real thing at full resolution
+        // in the background. Cancel stays live and abandons it.
+        BmpImage source = originalImageBeforePreview;
+        String filterKey = activeFilterKey;
+        int value = previewValue;
+        setApplyInProgress(true);
+        renderInBackground(() -> {
+            BmpImage full = deepCopyBmpImage(source);
+            return runFilter(full, filterKey, value) ? full : null;
+        }, full -> {
+            setApplyInProgress(false);
+            if (full != null) commitPreview(full);
+        });
+    }
+
+    private void commitPreview(BmpImage result) {
+        currentImage = result; // Make preview permanent, nothing else holds on to it
+        history.record(currentImage);
+        updateUndoRedoItems();
+        imageForPreview = null;
+        originalImageBeforePreview = null;
+        dropPreviewProxy();
+        controlPanel.setVisible(false);
+        activeFilterKey = null;
+        displayBmpImage(currentImage);
+        pack();
     }
 
     private void cancelPreviewChanges() {
+        cancelRendering();
         if (originalImageBeforePreview != null) {
-            currentImage = deepCopyBmpImage(originalImageBeforePreview); // Revert currentImage
+            currentImage = originalImageBeforePreview; // Revert currentImage, it was never modified
             displayBmpImage(currentImage); // Display the reverted state
 
             imageForPreview = null;
             originalImageBeforePreview = null;
+            dropPreviewProxy();
             controlPanel.setVisible(false);
             activeFilterKey = null;
             pack();
@@ -491,67 +641,82 @@ public class PhotoEditorUI extends JFrame {
         }
     }
 
-    private BmpImage deepCopyBmpImage(BmpImage original) {
-        if (original == null) return null;
-        BmpImage copy = new BmpImage();
-        copy.header = deepCopyBmpHeader(original.header);
-        // Ensure pixelGrid is not null before trying to get dimensions
-        if (original.pixelGrid != null && original.header != null) {
-            copy.pixelGrid = deepCopyPixelGrid(original.pixelGrid, original.header.width, Math.abs(original.header.height));
-        } else {
-            copy.pixelGrid = null; // Or handle error appropriately
+    private void undo() {
+        if (activeFilterKey != null) {
+            cancelPreviewChanges();
         }
-        return copy;
-    }
-
-    private Pixel[][] deepCopyPixelGrid(Pixel[][] original, int width, int height) {
-        if (original == null || width == 0 || height == 0) return null;
-        Pixel[][] copy = new Pixel[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                if (i < original.length && j < original[i].length && original[i][j] != null) {
-                    Pixel p = original[i][j];
-                    copy[i][j] = new Pixel(p.red, p.green, p.blue);
-                } else {
-                    // This case indicates a mismatch between header dimensions and actual grid,
-                    // or a sparse/jagged array if not rectangular. For BMP, it should be rectangular.
-                    // Filling with black or throwing an error might be options.
-                    copy[i][j] = new Pixel(0,0,0); // Default to black if source is out of bounds/null
-                }
-            }
+        BmpImage previous = history.undo();
+        if (previous == null) return;
+        currentImage = previous;
+        updateUndoRedoItems();
+        displayBmpImage(currentImage);
+    }
+
+    private void redo() {
+        if (activeFilterKey != null) {
+            cancelPreviewChanges();
         }
-        return copy;
+        BmpImage next = history.redo();
+        if (next == null) return;
+        currentImage = next;
+        updateUndoRedoItems();
+        displayBmpImage(currentImage);
+    }
+
+    private void updateUndoRedoItems() {
+        undoItem.setEnabled(history.canUndo());
+        redoItem.setEnabled(history.canRedo());
+        undoItem.setText(history.canUndo() ? "Undo (" + history.undoDepth() + ")" : "Undo");
+        redoItem.setText(history.canRedo() ? "Redo (" + history.redoDepth() + ")" : "Redo");
+    }
+
+    private BmpImage deepCopyBmpImage(BmpImage original) {
+        if (original == null) return null;
+        // The raster is a single int[], so this is one array clone instead of a Pixel per pixel
+        return original.copy();
     }
 
     private void displayBmpImage(BmpImage bmpImage) {
-        if (bmpImage == null || bmpImage.header == null || bmpImage.pixelGrid == null) {
-            imageLabel.setIcon(null);
-            imageLabel.setText("No image loaded or image data is invalid.");
+        if (bmpImage == null || bmpImage.header == null || bmpImage.pixels == null) {
+            imageCanvas.showMessage("No image loaded or image data is invalid.");
             return;
         }
-        imageLabel.setText(null);
 
-        int imgWidth = bmpImage.header.width;
-        int imgHeight = Math.abs(bmpImage.header.height);
+        int imgWidth = bmpImage.width;
+        int imgHeight = bmpImage.height;
 
         if (imgWidth <= 0 || imgHeight <= 0) {
-            imageLabel.setIcon(null);
-            imageLabel.setText("Invalid image dimensions.");
+            imageCanvas.showMessage("Invalid image dimensions.");
             return;
         }
 
-        // Check pixelGrid integrity against header dimensions
-        if (bmpImage.pixelGrid.length != imgHeight || bmpImage.pixelGrid[0].length != imgWidth) {
-            imageLabel.setIcon(null);
-            imageLabel.setText("Image data inconsistent with header dimensions.");
-            // Optionally, try to use Math.min to avoid array out of bounds if you want to be lenient
-            // imgHeight = Math.min(imgHeight, bmpImage.pixelGrid.length);
-            // if (imgHeight > 0) imgWidth = Math.min(imgWidth, bmpImage.pixelGrid[0].length); else imgWidth = 0;
-            // if (imgWidth <= 0 || imgHeight <= 0) return;
+        // Check raster integrity against the image dimensions
+        if (bmpImage.pixels.length != imgWidth * imgHeight) {
+            imageCanvas.showMessage("Image data inconsistent with header dimensions.");
             return;
         }
 
 
+        double effectiveScale = displayScale(imgWidth, imgHeight);
+
+        int newWidth = (int) (imgWidth * effectiveScale);
+        int newHeight = (int) (imgHeight * effectiveScale);
+
+        if (newWidth <= 0 || newHeight <= 0) {
+            // Fallback to a minimal size so there is always something to draw into
+            newWidth = Math.max(1, newWidth);
+            newHeight = Math.max(1, newHeight);
+        }
+
+        // No pixels are copied or rescaled here: the canvas wraps the raster and scales its cached
+        // zoom pyramid at paint time, so zooming the same image only changes the display size
+        imageCanvas.setImage(bmpImage, newWidth, newHeight);
+        imageScrollPane.revalidate();
+        imageScrollPane.repaint(); // Ensure viewport updates
+    }
+
+    // Screen pixels per image pixel: fit to the viewport, times the zoom
+    private double displayScale(int imgWidth, int imgHeight) {
         Dimension viewportSize = imageScrollPane.getViewport().getExtentSize();
         if (viewportSize.width <= 0 || viewportSize.height <= 0) {
             viewportSize = imageScrollPane.getPreferredSize();
@@ -567,37 +732,7 @@ public class PhotoEditorUI extends JFrame {
 
         double effectiveScale = initialScale * zoomFactor;
         if (effectiveScale <= 0) effectiveScale = 0.01; // Prevent zero or negative scale
-
-        int newWidth = (int) (imgWidth * effectiveScale);
-        int newHeight = (int) (imgHeight * effectiveScale);
-
-        if (newWidth <= 0 || newHeight <= 0) {
-            // Fallback to a minimal size to avoid issues with getScaledInstance
-            newWidth = Math.max(1, newWidth);
-            newHeight = Math.max(1, newHeight);
-        }
-
-        BufferedImage bufferedImg = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
-        for (int y = 0; y < imgHeight; y++) {
-            for (int x = 0; x < imgWidth; x++) {
-                // Check array bounds for pixelGrid before accessing
-                if (y < bmpImage.pixelGrid.length && x < bmpImage.pixelGrid[y].length) {
-                    Pixel pixel = bmpImage.pixelGrid[y][x];
-                    int rgb = (pixel != null) ? ((pixel.red << 16) | (pixel.green << 8) | pixel.blue) : 0;
-                    bufferedImg.setRGB(x, y, rgb);
-                } else {
-                    bufferedImg.setRGB(x, y, 0); // Black for out-of-bounds (should not happen if checks above are good)
-                }
-            }
-        }
-
-        Image scaledImage = bufferedImg.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
-        ImageIcon icon = new ImageIcon(scaledImage);
-        imageLabel.setIcon(icon);
-        imageLabel.setPreferredSize(new Dimension(newWidth, newHeight));
-        // imageLabel.revalidate(); // JScrollPane handles revalidation often
-        imageScrollPane.revalidate();
-        imageScrollPane.repaint(); // Ensure viewport updates
+        return effectiveScale;
     }
 
     private class MouseWheelZoomListener implements MouseWheelListener {
@@ -615,30 +750,39 @@ public class PhotoEditorUI extends JFrame {
             zoomFactor = Math.max(0.05, Math.min(zoomFactor, 20.0));
 
 
-            // For zoom-to-cursor, we need the mouse position *relative to the imageLabel*
+            // For zoom-to-cursor, we need the mouse position *relative to the imageCanvas*
             // and the current scroll position.
             Point mouseRelativeToScrollPane = e.getPoint(); // Mouse position relative to scrollPane
             Point currentViewPosition = imageScrollPane.getViewport().getViewPosition();
-            Dimension labelSize = imageLabel.getSize(); // Current scaled size
+            Dimension labelSize = imageCanvas.getSize(); // Current scaled size
 
-            // Calculate mouse position on the actual (scaled) imageLabel content
-            int mouseXOnLabel = mouseRelativeToScrollPane.x - imageLabel.getX() + currentViewPosition.x;
-            int mouseYOnLabel = mouseRelativeToScrollPane.y - imageLabel.getY() + currentViewPosition.y;
+            // Calculate mouse position on the actual (scaled) imageCanvas content
+            int mouseXOnLabel = mouseRelativeToScrollPane.x - imageCanvas.getX() + currentViewPosition.x;
+            int mouseYOnLabel = mouseRelativeToScrollPane.y - imageCanvas.getY() + currentViewPosition.y;
 
 
-            displayBmpImage(imageForPreview != null ? imageForPreview : currentImage); // This will resize the label
+            if (imageForPreview != null) {
+                // show the current preview at the new size straight away, so the label is resized for the
+                // scroll maths below, then re-render it for the new zoom in the background
+                displayBmpImage(imageForPreview); // This will resize the label
+                if (!applyInProgress) {
+                    applyFilterToPreview(activeFilterKey, previewValue);
+                }
+            } else {
+                displayBmpImage(currentImage); // This will resize the label
+            }
 
-            // After displayBmpImage, imageLabel has a new preferred size.
+            // After displayBmpImage, imageCanvas has a new preferred size.
             // We need to adjust scroll position to keep mouseXOnLabel/mouseYOnLabel at the same *visual* spot.
             // New label size
-            Dimension newLabelSize = imageLabel.getPreferredSize();
+            Dimension newLabelSize = imageCanvas.getPreferredSize();
 
             // Point on the new scaled image that should be under the mouse
             double anchorXRatio = (labelSize.width > 0) ? (double)mouseXOnLabel / labelSize.width : 0.5;
             double anchorYRatio = (labelSize.height > 0) ? (double)mouseYOnLabel / labelSize.height : 0.5;
 
-            int newViewX = (int)(newLabelSize.width * anchorXRatio - mouseRelativeToScrollPane.x + imageLabel.getX());
-            int newViewY = (int)(newLabelSize.height * anchorYRatio - mouseRelativeToScrollPane.y + imageLabel.getY());
+            int newViewX = (int)(newLabelSize.width * anchorXRatio - mouseRelativeToScrollPane.x + imageCanvas.getX());
+            int newViewY = (int)(newLabelSize.height * anchorYRatio - mouseRelativeToScrollPane.y + imageCanvas.getY());
 
             // Constrain view position
             newViewX = Math.max(0, Math.min(newViewX, newLabelSize.width - imageScrollPane.getViewport().getWidth()));
@@ -0,0 +1,299 @@
+import Kernels.Kernel;
+import Kernels.Kernels;
+import Models.BmpHeader;
+import Models.BmpImage;
+import Models.Pixel;
+import Models.IndexedRaster;
+import imageProcessors.ParallelRows;
+import imageProcessors.imageProcessor;
+import io.BmpReader;
+import io.BmpWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Random;
+
+// Regression checks for the fast paths that are supposed to reproduce a simple reference exactly (or within a
+// stated tolerance). There is no test framework in this tree, so this is a plain main: it prints one line per
+// check and exits with status 1 if any of them failed.
+//
+// Usage: java Verify
+//
+// Every check runs with 1 and with 3 ParallelRows threads, so band and tile splits are covered too.
+public class Verify {
+
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+    private static final PrintStream report = System.out;
+    private static int failures;
+
+    public static void main(String[] args) {
+        for (int threads : new int[] { 1, 3 }) {
+            ParallelRows.setThreadCount(threads);
+            report.println("threads=" + threads);
+            System.setOut(QUIET);
+            try {
+                integerConvolution();
+                fftConvolution();
+                rleRoundTrip();
+                rleEscapes();
+            } finally {
+                System.setOut(report);
+            }
+        }
+        report.println(failures == 0 ? "all checks passed" : failures + " check(s) FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Integer-weight kernels run on the fixed-point path (int sums, reciprocal multiply instead of dividing).
+    // It has to stay within 1 of the double path on every channel, .5 ties included.
+    private static void integerConvolution() {
+        BmpImage source = noise(203, 157, 1);
+        for (Field field : Kernels.class.getFields()) {
+            if (field.getType() == Kernel.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    compareConvolution("fixed-point/" + field.getName(), source, (Kernel) field.get(null), 1);
+                } catch (IllegalAccessException e) {
+                    fail("fixed-point/" + field.getName(), e.toString());
+                }
+            }
+        }
+        Random random = new Random(7);
+        // odd divisors such as 17 leave plenty of exact .5 quotients on noise
+        compareConvolution("fixed-point/random 3x3 /17", source, randomIntegerKernel(random, 3, 17), 1);
+        compareConvolution("fixed-point/random 5x5", source, randomIntegerKernel(random, 5, 0), 1);
+        compareConvolution("fixed-point/random 7x7 /396", source, randomIntegerKernel(random, 7, 396), 1);
+    }
+
+    // Kernels of 11x11 and up go through FFTConvolution: overlap-save blocks, red and green packed into one
+    // complex transform, integer sums snapped before dividing. The image spans several blocks for every size
+    // here, so block seams are covered. Integer weights snap to the exact sum and must match the reference;
+    // fractional ones keep the transform's rounding noise, which can only tip a .5 tie, so they get 1.
+    private static void fftConvolution() {
+        BmpImage source = noise(473, 461, 2);
+        Random random = new Random(11);
+        for (int size : new int[] { 15, 17, 31, 63 }) {
+            compareConvolution("fft/random " + size + "x" + size + " integer", source,
+                    randomIntegerKernel(random, size, 0), 0);
+            compareConvolution("fft/random " + size + "x" + size + " fractional", source,
+                    randomFractionalKernel(random, size), 1);
+        }
+    }
+
+    // writeRle then read back in every ReadMode: the indices have to come back unchanged and the header has to
+    // describe them uncompressed. Odd widths cover the RLE4 half byte at the end of a line and RLE8 odd literals.
+    private static void rleRoundTrip() {
+        for (int colours : new int[] { 16, 200 }) {
+            for (int width : new int[] { 1, 3, 7, 33, 131 }) {
+                String name = (colours <= 16 ? "rle4" : "rle8") + "/round trip " + width + "x9";
+                try {
+                    IndexedRaster raster = runsAndLiterals(width, 9, colours, width);
+                    BmpImage image = new BmpImage(new BmpHeader(), raster);
+                    Path file = Files.createTempFile("verify", ".bmp");
+                    try {
+                        BmpWriter.writeRle(file.toString(), image);
+                        int compression = ByteBuffer.wrap(Files.readAllBytes(file), 30, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                        int expectedCompression = colours <= 16 ? 2 : 1;
+                        String problem = compression != expectedCompression
+                                ? "written with compression " + compression + ", expected " + expectedCompression
+                                : checkReadBack(file, raster.indices, colours <= 16 ? 4 : 8);
+                        if (problem == null) pass(name, "identical in all read modes");
+                        else fail(name, problem);
+                    } finally {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(name, e.toString());
+                }
+            }
+        }
+    }
+
+    // Hand-built streams for the escapes the writer never emits: delta jumps (which leave the skipped pixels
+    // at index 0), end of line before the row is full, and end of bitmap with rows left over
+    private static void rleEscapes() {
+        // 4x3, bottom line first: run of 2 x 5, delta right 1 and up 1, run of 1 x 7, end of line,
+        // literal 1 2 3 (padded to even), end of bitmap
+        rleEscapeCase("rle8/delta, eol, literal", 4, 3, 8,
+                new byte[] { 2, 5, 0, 2, 1, 1, 1, 7, 0, 0, 0, 3, 1, 2, 3, 0, 0, 1 },
+                new byte[] { 1, 2, 3, 0, 0, 0, 0, 7, 5, 5, 0, 0 });
+        // 5x2: run of 1 x 4, delta right 3 on the same line, run of 1 x 9, end of line, end of bitmap
+        rleEscapeCase("rle8/same-line delta, early eob", 5, 2, 8,
+                new byte[] { 1, 4, 0, 2, 3, 0, 1, 9, 0, 0, 0, 1 },
+                new byte[] { 0, 0, 0, 0, 0, 4, 0, 0, 0, 9 });
+        // 4x3: run of 3 alternating 1 2, end of line, literal 3 4 5 6, end of line, run of 4 of 7 0,
+        // and no end of bitmap at all
+        rleEscapeCase("rle4/alternating run, eol, literal", 4, 3, 4,
+                new byte[] { 3, 0x12, 0, 0, 0, 4, 0x34, 0x56, 0, 0, 4, 0x70 },
+                new byte[] { 7, 0, 7, 0, 3, 4, 5, 6, 1, 2, 1, 0 });
+    }
+
+    private static void rleEscapeCase(String name, int width, int height, int bits, byte[] data, byte[] expected) {
+        try {
+            Path file = Files.createTempFile("verify", ".bmp");
+            try {
+                int colours = 1 << bits;
+                ByteBuffer bytes = ByteBuffer.allocate(54 + colours * 4 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+                bytes.put((byte) 'B').put((byte) 'M').putInt(bytes.capacity()).putInt(0).putInt(54 + colours * 4)
+                        .putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) bits)
+                        .putInt(bits == 4 ? 2 : 1).putInt(data.length).putInt(2835).putInt(2835)
+                        .putInt(colours).putInt(0);
+                for (int i = 0; i < colours; i++) {
+                    bytes.putInt(i * 0x010101);
+                }
+                bytes.put(data);
+                Files.write(file, bytes.array());
+                String problem = checkReadBack(file, expected, bits);
+                if (problem == null) pass(name, "decoded as expected in all read modes");
+                else fail(name, problem);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(name, e.toString());
+        }
+    }
+
+    // null if every ReadMode gives back these indices with an uncompressed header, otherwise what went wrong
+    private static String checkReadBack(Path file, byte[] expected, int bits) throws IOException {
+        for (BmpReader.ReadMode mode : BmpReader.ReadMode.values()) {
+            BmpImage read = BmpReader.read(file.toString(), mode);
+            if (read.indexed == null) return mode + ": not read as indexed";
+            if (!Arrays.equals(read.indexed.indices, expected)) {
+                return mode + ": indices differ, got " + Arrays.toString(read.indexed.indices);
+            }
+            if (read.header.compression != 0 || read.header.bitsPerPixel != bits) {
+                return mode + ": header says " + read.header.bitsPerPixel + " bit, compression " + read.header.compression;
+            }
+        }
+        return null;
+    }
+
+    // Rows mixing long runs, short runs and stretches of all different indices, so the encoder has to pick
+    // every kind of packet. Uses all of the first colours entries of a grey palette.
+    private static IndexedRaster runsAndLiterals(int width, int height, int colours, long seed) {
+        Random random = new Random(seed);
+        byte[] indices = new byte[width * height];
+        int i = 0;
+        while (i < indices.length) {
+            int length = Math.min(indices.length - i, 1 + random.nextInt(random.nextBoolean() ? 3 : 40));
+            if (random.nextBoolean()) {
+                Arrays.fill(indices, i, i + length, (byte) random.nextInt(colours));
+                i += length;
+            } else {
+                for (int end = i + length; i < end; i++) {
+                    indices[i] = (byte) random.nextInt(colours);
+                }
+            }
+        }
+        int[] palette = new int[colours];
+        for (int c = 0; c < colours; c++) {
+            palette[c] = c * 0x010101;
+        }
+        return new IndexedRaster(palette, indices, width, height);
+    }
+
+    private static void compareConvolution(String name, BmpImage source, Kernel kernel, int tolerance) {
+        int[] expected = referenceConvolution(source.pixels, source.width, source.height, kernel);
+        BmpImage image = source.copy();
+        imageProcessor.convolution(image, kernel);
+        int maxDiff = 0;
+        int differing = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int diff = Math.abs(((expected[i] >> shift) & 0xFF) - ((image.pixels[i] >> shift) & 0xFF));
+                if (diff > 0) differing++;
+                maxDiff = Math.max(maxDiff, diff);
+            }
+        }
+        String detail = "max diff " + maxDiff + ", " + differing + " channel(s) differ";
+        if (maxDiff > tolerance) fail(name, detail);
+        else pass(name, detail);
+    }
+
+    // The plain double path: weights times samples in kernel order, out-of-range taps skipped,
+    // then round(sum / divisor + offset) clamped to 0-255
+    private static int[] referenceConvolution(int[] pixels, int width, int height, Kernel kernel) {
+        double[][] matrix = kernel.matrix;
+        int centerY = matrix.length / 2;
+        int centerX = matrix[0].length / 2;
+        int[] output = new int[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double sumR = 0, sumG = 0, sumB = 0;
+                for (int ky = 0; ky < matrix.length; ky++) {
+                    int sy = y + ky - centerY;
+                    if (sy < 0 || sy >= height) continue;
+                    for (int kx = 0; kx < matrix[0].length; kx++) {
+                        int sx = x + kx - centerX;
+                        if (sx < 0 || sx >= width) continue;
+                        int rgb = pixels[sy * width + sx];
+                        double weight = matrix[ky][kx];
+                        sumR += ((rgb >> 16) & 0xFF) * weight;
+                        sumG += ((rgb >> 8) & 0xFF) * weight;
+                        sumB += (rgb & 0xFF) * weight;
+                    }
+                }
+                output[y * width + x] = Pixel.pack(
+                        (int) Math.round(sumR / kernel.divisor + kernel.offset),
+                        (int) Math.round(sumG / kernel.divisor + kernel.offset),
+                        (int) Math.round(sumB / kernel.divisor + kernel.offset));
+            }
+        }
+        return output;
+    }
+
+    // divisor 0 means the sum of the weights (or 1 if that isn't positive)
+    private static Kernel randomIntegerKernel(Random random, int size, int divisor) {
+        double[][] matrix = new double[size][size];
+        int sum = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int weight = random.nextInt(41) - 10;
+                matrix[y][x] = weight;
+                sum += weight;
+            }
+        }
+        if (divisor == 0) divisor = sum > 0 ? sum : 1;
+        return new Kernel(matrix, divisor, 0);
+    }
+
+    private static Kernel randomFractionalKernel(Random random, int size) {
+        double[][] matrix = new double[size][size];
+        double sum = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                matrix[y][x] = random.nextDouble() * 2 - 0.5;
+                sum += matrix[y][x];
+            }
+        }
+        return new Kernel(matrix, sum, 0);
+    }
+
+    private static BmpImage noise(int width, int height, long seed) {
+        BmpImage image = new BmpImage(new BmpHeader(), width, height);
+        image.header.bitsPerPixel = 24;
+        image.UpdateHeader(14, 40);
+        Random random = new Random(seed);
+        for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] = random.nextInt(0x1000000);
+        }
+        return image;
+    }
+
+    private static void pass(String name, String detail) {
+        report.printf("  ok    %-44s %s%n", name, detail);
+    }
+
+    private static void fail(String name, String detail) {
+        failures++;
+        report.printf("  FAIL  %-44s %s%n", name, detail);
+    }
+}
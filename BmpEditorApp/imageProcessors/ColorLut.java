@@ -0,0 +1,128 @@
+package imageProcessors;
+
+import Filters.HSVfilters;
+import Models.Pixel;
+
+// An HSV filter at a fixed strength baked into an RGB -> RGB table. Build it once and map as many images
+// through it as you like with imageProcessor.applyColorLut.
+// exact() keeps one entry per 24-bit colour (64 MB) and reproduces applyHSVfilter bit for bit. Nothing builds
+// one behind the caller's back: it only pays off when the caller keeps it for several big images, and only
+// the caller knows that (and whether 64 MB is fine).
+// grid() samples an n x n x n lattice and interpolates between its corners, which is a few KB to a
+// few MB but can be off by a level or two, most visibly where the hue wraps around.
+public class ColorLut {
+    // exact() costs about as much as converting 16M pixels directly; after that every pixel is one lookup
+    private static final int EXACT = 0;
+
+    // packed 0x00RRGGBB outputs. exact: indexed by the input rgb. grid: [r][g][b] lattice nodes, b fastest
+    private final int[] table;
+    private final int size;
+    // grid only: lattice cell below each channel value and the 16-bit fraction of the way to the next one
+    private final int[] cell;
+    private final int[] fraction;
+
+    private ColorLut(int[] table, int size) {
+        this.table = table;
+        this.size = size;
+        if (size == EXACT) {
+            cell = null;
+            fraction = null;
+            return;
+        }
+        cell = new int[256];
+        fraction = new int[256];
+        for (int v = 0; v < 256; v++) {
+            long position = ((long) v * (size - 1) << 16) / 255;
+            int c = (int) (position >> 16);
+            int f = (int) (position & 0xFFFF);
+            if (c == size - 1) { // top value sits exactly on the last node
+                c = size - 2;
+                f = 0x10000;
+            }
+            cell[v] = c;
+            fraction[v] = f;
+        }
+    }
+
+    public static ColorLut exact(HSVfilters filter, int strength) {
+        return exact(new PointPipeline().addHsv(filter, strength));
+    }
+
+    // Bakes a whole chain of point operations into one table
+    public static ColorLut exact(PointPipeline pipeline) {
+        int[] table = new int[1 << 24];
+        // one red value per "row" so the build spreads over the pool like any image
+        ParallelRows.forEachRowRange(256, 1 << 16, (startRed, endRed) -> {
+            // start from the identity and run the chain over it in place
+            for (int i = startRed << 16; i < endRed << 16; i++) {
+                table[i] = i;
+            }
+            pipeline.run(table, startRed << 16, endRed << 16, new Pixel(0, 0, 0));
+        });
+        return new ColorLut(table, EXACT);
+    }
+
+    // size is the number of lattice nodes per axis; 17, 33 and 65 are the usual choices
+    public static ColorLut grid(HSVfilters filter, int strength, int size) {
+        if (size < 2 || size > 256) {
+            throw new IllegalArgumentException("Grid size must be between 2 and 256");
+        }
+        int[] table = new int[size * size * size];
+        int[] level = new int[size];
+        for (int i = 0; i < size; i++) {
+            level[i] = (int) Math.round(i * 255.0 / (size - 1));
+        }
+        double[] hsv = new double[3];
+        for (int r = 0; r < size; r++) {
+            for (int g = 0; g < size; g++) {
+                for (int b = 0; b < size; b++) {
+                    int rgb = (level[r] << 16) | (level[g] << 8) | level[b];
+                    table[(r * size + g) * size + b] = imageProcessor.applyHSV(rgb, filter, strength, hsv);
+                }
+            }
+        }
+        return new ColorLut(table, size);
+    }
+
+    public boolean isExact() {
+        return size == EXACT;
+    }
+
+    public int map(int rgb) {
+        if (size == EXACT) {
+            return table[rgb & 0xFFFFFF];
+        }
+        int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+        int fr = fraction[r], fg = fraction[g], fb = fraction[b];
+        int base = (cell[r] * size + cell[g]) * size + cell[b];
+        int stepG = size, stepR = size * size;
+
+        int c000 = table[base], c001 = table[base + 1];
+        int c010 = table[base + stepG], c011 = table[base + stepG + 1];
+        int c100 = table[base + stepR], c101 = table[base + stepR + 1];
+        int c110 = table[base + stepR + stepG], c111 = table[base + stepR + stepG + 1];
+
+        int outR = interpolate(c000 >> 16, c001 >> 16, c010 >> 16, c011 >> 16,
+                c100 >> 16, c101 >> 16, c110 >> 16, c111 >> 16, fr, fg, fb);
+        int outG = interpolate((c000 >> 8) & 0xFF, (c001 >> 8) & 0xFF, (c010 >> 8) & 0xFF, (c011 >> 8) & 0xFF,
+                (c100 >> 8) & 0xFF, (c101 >> 8) & 0xFF, (c110 >> 8) & 0xFF, (c111 >> 8) & 0xFF, fr, fg, fb);
+        int outB = interpolate(c000 & 0xFF, c001 & 0xFF, c010 & 0xFF, c011 & 0xFF,
+                c100 & 0xFF, c101 & 0xFF, c110 & 0xFF, c111 & 0xFF, fr, fg, fb);
+        return (outR << 16) | (outG << 8) | outB;
+    }
+
+    // Trilinear blend of one channel. Corners are named by their (r, g, b) offsets, weights are 16-bit fractions.
+    // Stays within 0..255 because every step is a convex mix of corner values.
+    private static int interpolate(int c000, int c001, int c010, int c011, int c100, int c101, int c110, int c111,
+                                   int fr, int fg, int fb) {
+        long c00 = ((long) c000 << 16) + (long) (c001 - c000) * fb;
+        long c01 = ((long) c010 << 16) + (long) (c011 - c010) * fb;
+        long c10 = ((long) c100 << 16) + (long) (c101 - c100) * fb;
+        long c11 = ((long) c110 << 16) + (long) (c111 - c110) * fb;
+        long c0 = (c00 << 16) + (c01 - c00) * fg;
+        long c1 = (c10 << 16) + (c11 - c10) * fg;
+        long c = (c0 << 16) + (c1 - c0) * fr;
+        // c carries 48 fraction bits; round to nearest
+        return (int) ((c + (1L << 47)) >> 48);
+    }
+}
@@ -0,0 +1,221 @@
+package imageProcessors;
+
+import Kernels.Kernel;
+import Models.Pixel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Overlap-save FFT convolution for big kernels, where the direct loops cost kernelWidth * kernelHeight taps per pixel.
+// The image is cut into n x n blocks (n a power of two) that overlap by the kernel size minus one. Each block is
+// transformed, multiplied by the kernel's spectrum and transformed back; the part of the result that didn't wrap
+// around is written out. Samples outside the image are zero, same as the direct loops skipping them.
+// Kernel spectra are cached per kernel and block size, so running one kernel over many images only pays
+// for the image transforms.
+class FFTConvolution {
+
+    private static final int MIN_BLOCK = 64;
+    private static final int MAX_BLOCK = 512;
+
+    // weak keys so a custom Kernel that's no longer used doesn't pin its spectra
+    private static final Map<Kernel, Map<Integer, double[][]>> SPECTRA = new WeakHashMap<>();
+
+    private static final ThreadLocal<Map<Integer, Block>> BLOCKS = ThreadLocal.withInitial(HashMap::new);
+
+    // Block side: big enough that most of each block is usable output, small enough to stay near the caches
+    static int blockSize(Kernel kernel) {
+        int span = Math.max(kernel.matrix.length, kernel.matrix[0].length) - 1;
+        int n = MIN_BLOCK;
+        while (n < 8 * span && n < MAX_BLOCK) n <<= 1;
+        while (n <= 2 * span) n <<= 1;
+        return n;
+    }
+
+    static void convolve(int[] pixels, int[] newPixels, int width, int height, Kernel kernel) {
+        int n = blockSize(kernel);
+        double[][] spectrum = spectrum(kernel, n);
+        int kernelHeight = kernel.matrix.length;
+        int kernelWidth = kernel.matrix[0].length;
+        int outputWidth = n - (kernelWidth - 1);
+        int outputHeight = n - (kernelHeight - 1);
+        ParallelRows.forEachTile(width, height, outputWidth, outputHeight, (startX, startY, endX, endY) ->
+                convolveBlock(pixels, newPixels, width, height, kernel, spectrum, n, startX, startY, endX, endY));
+    }
+
+    // Spectrum of the kernel zero-padded to n x n, conjugated (the loops correlate rather than convolve)
+    // and pre-scaled by 1 / n^2 so the inverse transform needs no extra pass
+    private static double[][] spectrum(Kernel kernel, int n) {
+        synchronized (SPECTRA) {
+            Map<Integer, double[][]> bySize = SPECTRA.computeIfAbsent(kernel, k -> new HashMap<>());
+            double[][] cached = bySize.get(n);
+            if (cached != null) return cached;
+
+            double[] re = new double[n * n];
+            double[] im = new double[n * n];
+            double[][] matrix = kernel.matrix;
+            for (int y = 0; y < matrix.length; y++) {
+                for (int x = 0; x < matrix[y].length; x++) {
+                    re[y * n + x] = matrix[y][x];
+                }
+            }
+            new Block(n).transform(re, im, false);
+            double scale = 1.0 / ((double) n * n);
+            for (int i = 0; i < re.length; i++) {
+                re[i] *= scale;
+                im[i] *= -scale;
+            }
+            double[][] result = {re, im};
+            bySize.put(n, result);
+            return result;
+        }
+    }
+
+    private static void convolveBlock(int[] pixels, int[] newPixels, int width, int height, Kernel kernel, double[][] spectrum,
+                                      int n, int startX, int startY, int endX, int endY) {
+        Block block = BLOCKS.get().computeIfAbsent(n, Block::new);
+        int kernelCenterY = kernel.matrix.length / 2;
+        int kernelCenterX = kernel.matrix[0].length / 2;
+
+        // red and green ride together as one complex signal, blue goes in the second one.
+        // The kernel is real, so the two halves come back out separately.
+        double[] redGreenRe = block.re1, redGreenIm = block.im1, blueRe = block.re2, blueIm = block.im2;
+        int originX = startX - kernelCenterX;
+        int originY = startY - kernelCenterY;
+        int copyStartX = Math.max(0, originX);
+        int copyEndX = Math.min(width, originX + n);
+        for (int y = 0; y < n; y++) {
+            int row = y * n;
+            Arrays.fill(redGreenRe, row, row + n, 0);
+            Arrays.fill(redGreenIm, row, row + n, 0);
+            Arrays.fill(blueRe, row, row + n, 0);
+            Arrays.fill(blueIm, row, row + n, 0);
+            int imageY = originY + y;
+            if (imageY < 0 || imageY >= height) continue;
+            int imageRow = imageY * width;
+            for (int x = copyStartX; x < copyEndX; x++) {
+                int rgb = pixels[imageRow + x];
+                int b = row + x - originX;
+                redGreenRe[b] = (rgb >> 16) & 0xFF;
+                redGreenIm[b] = (rgb >> 8) & 0xFF;
+                blueRe[b] = rgb & 0xFF;
+            }
+        }
+
+        block.transform(redGreenRe, redGreenIm, false);
+        block.transform(blueRe, blueIm, false);
+        double[] kernelRe = spectrum[0], kernelIm = spectrum[1];
+        for (int i = 0; i < n * n; i++) {
+            double kr = kernelRe[i], ki = kernelIm[i];
+            double a = redGreenRe[i], b = redGreenIm[i];
+            redGreenRe[i] = a * kr - b * ki;
+            redGreenIm[i] = a * ki + b * kr;
+            a = blueRe[i];
+            b = blueIm[i];
+            blueRe[i] = a * kr - b * ki;
+            blueIm[i] = a * ki + b * kr;
+        }
+        block.transform(redGreenRe, redGreenIm, true);
+        block.transform(blueRe, blueIm, true);
+
+        double divisor = kernel.divisor;
+        int offset = kernel.offset;
+        // integer weights on integer samples give an integer sum, so snapping to it removes the transform's
+        // rounding noise and the result matches the direct loops exactly
+        boolean integral = kernel.isIntegral();
+        for (int i = startY; i < endY; i++) {
+            int row = (i - startY) * n;
+            for (int j = startX; j < endX; j++) {
+                int b = row + (j - startX);
+                double sumR = redGreenRe[b], sumG = redGreenIm[b], sumB = blueRe[b];
+                if (integral) {
+                    sumR = Math.rint(sumR);
+                    sumG = Math.rint(sumG);
+                    sumB = Math.rint(sumB);
+                }
+                int newR = (int) Math.round((sumR / divisor) + offset);
+                int newG = (int) Math.round((sumG / divisor) + offset);
+                int newB = (int) Math.round((sumB / divisor) + offset);
+                newPixels[i * width + j] = Pixel.pack(newR, newG, newB);
+            }
+        }
+    }
+
+    // Radix-2 FFT tables and scratch for one block size. Each worker thread keeps its own.
+    private static final class Block {
+        final int n;
+        final int[] bitReverse;
+        final double[] cos;
+        final double[] sin;
+        final double[] re1, im1, re2, im2;
+        final double[] columnRe, columnIm;
+
+        Block(int n) {
+            this.n = n;
+            int bits = Integer.numberOfTrailingZeros(n);
+            bitReverse = new int[n];
+            for (int i = 0; i < n; i++) {
+                bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+            }
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int i = 0; i < n / 2; i++) {
+                double angle = -2 * Math.PI * i / n;
+                cos[i] = Math.cos(angle);
+                sin[i] = Math.sin(angle);
+            }
+            re1 = new double[n * n];
+            im1 = new double[n * n];
+            re2 = new double[n * n];
+            im2 = new double[n * n];
+            columnRe = new double[n];
+            columnIm = new double[n];
+        }
+
+        // 2D transform in place: every row, then every column. The inverse is unscaled.
+        void transform(double[] re, double[] im, boolean inverse) {
+            for (int row = 0; row < n; row++) {
+                fft(re, im, row * n, inverse);
+            }
+            for (int col = 0; col < n; col++) {
+                for (int i = 0, k = col; i < n; i++, k += n) {
+                    columnRe[i] = re[k];
+                    columnIm[i] = im[k];
+                }
+                fft(columnRe, columnIm, 0, inverse);
+                for (int i = 0, k = col; i < n; i++, k += n) {
+                    re[k] = columnRe[i];
+                    im[k] = columnIm[i];
+                }
+            }
+        }
+
+        private void fft(double[] re, double[] im, int start, boolean inverse) {
+            for (int i = 0; i < n; i++) {
+                int j = bitReverse[i];
+                if (j > i) {
+                    double t = re[start + i]; re[start + i] = re[start + j]; re[start + j] = t;
+                    t = im[start + i]; im[start + i] = im[start + j]; im[start + j] = t;
+                }
+            }
+            double sign = inverse ? -1 : 1;
+            for (int size = 2; size <= n; size <<= 1) {
+                int half = size >> 1;
+                int step = n / size;
+                for (int blockStart = start; blockStart < start + n; blockStart += size) {
+                    for (int k = 0, t = 0; k < half; k++, t += step) {
+                        double wr = cos[t], wi = sign * sin[t];
+                        int even = blockStart + k, odd = even + half;
+                        double xr = re[odd] * wr - im[odd] * wi;
+                        double xi = re[odd] * wi + im[odd] * wr;
+                        re[odd] = re[even] - xr;
+                        im[odd] = im[even] - xi;
+                        re[even] += xr;
+                        im[even] += xi;
+                    }
+                }
+            }
+        }
+    }
+}
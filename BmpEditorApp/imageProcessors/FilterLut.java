@@ -0,0 +1,39 @@
+package imageProcessors;
+
+import Filters.ChannelSeparable;
+import Models.Pixel;
+
+// A ChannelSeparable filter evaluated once per possible channel value for a given strength.
+// Entries are stored already shifted into place, so a pixel maps with three lookups and two ORs.
+public class FilterLut {
+    final int[] red = new int[256];
+    final int[] green = new int[256];
+    final int[] blue = new int[256];
+
+    public static FilterLut compile(ChannelSeparable filter, int strength) {
+        FilterLut lut = new FilterLut();
+        Pixel scratch = new Pixel(0, 0, 0);
+        for (int v = 0; v < 256; v++) {
+            // every channel starts at v; the filter promises each output only looks at its own input
+            scratch.red = v;
+            scratch.green = v;
+            scratch.blue = v;
+            filter.apply(scratch, strength);
+            lut.red[v] = Math.max(0, Math.min(255, scratch.red)) << 16;
+            lut.green[v] = Math.max(0, Math.min(255, scratch.green)) << 8;
+            lut.blue[v] = Math.max(0, Math.min(255, scratch.blue));
+        }
+        return lut;
+    }
+
+    // This table followed by next, as one table
+    FilterLut then(FilterLut next) {
+        FilterLut combined = new FilterLut();
+        for (int v = 0; v < 256; v++) {
+            combined.red[v] = next.red[red[v] >> 16];
+            combined.green[v] = next.green[green[v] >> 8];
+            combined.blue[v] = next.blue[blue[v]];
+        }
+        return combined;
+    }
+}
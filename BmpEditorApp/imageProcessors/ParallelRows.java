@@ -0,0 +1,214 @@
+package imageProcessors;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+// Splits an image into bands of rows (or into tiles) and runs them on a ForkJoinPool.
+// Every row range or tile writes only its own output pixels, so results match the sequential loops bit for bit.
+public class ParallelRows {
+
+    public interface RowRange {
+        void run(int startRow, int endRow);
+    }
+
+    // Output tile is [startX, endX) x [startY, endY)
+    public interface TileTask {
+        void run(int startX, int startY, int endX, int endY);
+    }
+
+    // below this many pixels the fork/join overhead costs more than it saves
+    private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+    // chunks per thread, so a slow band doesn't leave the other cores idle at the end
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static int threadCount = defaultThreadCount();
+    private static ForkJoinPool pool;
+    // true when pool was created here. A pool handed in through setPool stays the caller's to shut down
+    private static boolean ownsPool;
+    // forEachRowRange calls currently running on each pool, so a replaced pool is shut down only once it drains
+    private static final Map<ForkJoinPool, Integer> running = new IdentityHashMap<>();
+    // pools created here that were replaced while work was still running on them
+    private static final Set<ForkJoinPool> retired = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // set on the thread inside runCancellable, and on pool threads while they run one of its chunks
+    private static final ThreadLocal<BooleanSupplier> cancelCheck = new ThreadLocal<>();
+
+    private static int defaultThreadCount() {
+        String configured = System.getProperty("bmpeditor.threads");
+        if (configured != null) {
+            try {
+                return Math.max(1, Integer.parseInt(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad bmpeditor.threads value: " + configured);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // 1 forces the plain sequential loops
+    public static synchronized void setThreadCount(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (threads != threadCount) {
+            threadCount = threads;
+            retirePool();
+        }
+    }
+
+    public static synchronized int getThreadCount() {
+        return threadCount;
+    }
+
+    // Lets a caller hand in its own pool, e.g. one shared with the rest of a batch job
+    public static synchronized void setPool(ForkJoinPool customPool) {
+        if (pool != customPool) {
+            retirePool();
+            pool = customPool;
+        }
+        threadCount = customPool.getParallelism();
+    }
+
+    // Drops the current pool. Work already running on it finishes there; later calls get a new pool
+    private static void retirePool() {
+        if (pool != null && ownsPool) {
+            if (running.containsKey(pool)) retired.add(pool);
+            else pool.shutdown();
+        }
+        pool = null;
+        ownsPool = false;
+    }
+
+    private static synchronized ForkJoinPool acquirePool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threadCount);
+            ownsPool = true;
+        }
+        running.merge(pool, 1, Integer::sum);
+        return pool;
+    }
+
+    private static synchronized void releasePool(ForkJoinPool used) {
+        if (running.merge(used, -1, Integer::sum) == 0) {
+            running.remove(used);
+            if (retired.remove(used)) used.shutdown();
+        }
+    }
+
+    // Runs work with cooperative cancellation: every row range or tile chunk started through this class
+    // while it runs (nested calls included) first asks cancelled, and throws CancellationException once it says yes.
+    // Work that is abandoned part way stops within a chunk instead of finishing the whole image.
+    public static <T> T runCancellable(BooleanSupplier cancelled, Supplier<T> work) {
+        BooleanSupplier outer = cancelCheck.get();
+        cancelCheck.set(cancelled);
+        try {
+            return work.get();
+        } finally {
+            restoreCancelCheck(outer);
+        }
+    }
+
+    // For loops that don't go through forEachRowRange
+    public static void checkCancelled() {
+        BooleanSupplier cancelled = cancelCheck.get();
+        if (cancelled != null && cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static void restoreCancelCheck(BooleanSupplier outer) {
+        if (outer == null) {
+            cancelCheck.remove();
+        } else {
+            cancelCheck.set(outer);
+        }
+    }
+
+    private static RowRange cancellable(RowRange task, BooleanSupplier cancelled) {
+        return (startRow, endRow) -> {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            BooleanSupplier outer = cancelCheck.get();
+            cancelCheck.set(cancelled);
+            try {
+                task.run(startRow, endRow);
+            } finally {
+                restoreCancelCheck(outer);
+            }
+        };
+    }
+
+    public static void forEachRowRange(int rows, int rowWidth, RowRange task) {
+        int threads = getThreadCount();
+        BooleanSupplier cancelled = cancelCheck.get();
+        if (cancelled != null) {
+            task = cancellable(task, cancelled);
+        }
+        if (threads == 1 || rows < 2 || (long) rows * rowWidth < MIN_PARALLEL_PIXELS) {
+            if (cancelled == null) {
+                task.run(0, rows);
+                return;
+            }
+            // still in chunks, so a cancel is noticed part way through
+            int grain = Math.max(1, MIN_PARALLEL_PIXELS / Math.max(1, rowWidth));
+            for (int start = 0; start < rows; start += grain) {
+                task.run(start, Math.min(start + grain, rows));
+            }
+            return;
+        }
+        int grain = Math.max(1, rows / (threads * CHUNKS_PER_THREAD));
+        ForkJoinPool used = acquirePool();
+        try {
+            used.invoke(new RowTask(task, 0, rows, grain));
+        } finally {
+            releasePool(used);
+        }
+    }
+
+    // Tiles are numbered row by row and handed out in ranges the same way rows are
+    public static void forEachTile(int width, int height, int tileWidth, int tileHeight, TileTask task) {
+        int tilesAcross = (width + tileWidth - 1) / tileWidth;
+        int tilesDown = (height + tileHeight - 1) / tileHeight;
+        forEachRowRange(tilesAcross * tilesDown, tileWidth * tileHeight, (firstTile, endTile) -> {
+            for (int t = firstTile; t < endTile; t++) {
+                int startX = (t % tilesAcross) * tileWidth;
+                int startY = (t / tilesAcross) * tileHeight;
+                task.run(startX, startY, Math.min(startX + tileWidth, width), Math.min(startY + tileHeight, height));
+            }
+        });
+    }
+
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowRange task;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        RowTask(RowRange task, int start, int end, int grain) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                task.run(start, end);
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new RowTask(task, start, mid, grain), new RowTask(task, mid, end, grain));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package imageProcessors;
+
+import Filters.ChannelSeparable;
+import Filters.Filters;
+import Filters.HSVfilters;
+import Models.BmpImage;
+import Models.Pixel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A chain of point operations (Filters and HSVfilters) that runs as one pass over the raster.
+// Each row band is walked in small chunks and every stage runs over a chunk while it is still in cache,
+// so main memory is read and written once however long the chain is. Pixels are clamped back to 0..255
+// between stages exactly like separate applyFilter / applyHSVfilter calls, so the output is the same.
+// Back to back ChannelSeparable filters are composed into a single lookup table as they are added.
+public class PointPipeline {
+
+    // small enough to stay in L1 between stages, big enough that the per-chunk stage calls don't matter
+    private static final int CHUNK = 2048;
+
+    // Rewrites pixels[from, to) in place
+    private interface Stage {
+        void apply(int[] pixels, int from, int to, Pixel scratch);
+    }
+
+    private static class LutStage implements Stage {
+        final FilterLut lut;
+
+        LutStage(FilterLut lut) {
+            this.lut = lut;
+        }
+
+        @Override
+        public void apply(int[] pixels, int from, int to, Pixel scratch) {
+            int[] red = lut.red, green = lut.green, blue = lut.blue;
+            for (int i = from; i < to; i++) {
+                int rgb = pixels[i];
+                pixels[i] = red[(rgb >> 16) & 0xFF] | green[(rgb >> 8) & 0xFF] | blue[rgb & 0xFF];
+            }
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private int operations;
+
+    public PointPipeline add(Filters filter, int strength) {
+        operations++;
+        if (filter instanceof ChannelSeparable) {
+            FilterLut lut = FilterLut.compile((ChannelSeparable) filter, strength);
+            Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+            if (last instanceof LutStage) {
+                stages.set(stages.size() - 1, new LutStage(((LutStage) last).lut.then(lut)));
+            } else {
+                stages.add(new LutStage(lut));
+            }
+            return this;
+        }
+        stages.add((pixels, from, to, scratch) -> {
+            for (int i = from; i < to; i++) {
+                scratch.load(pixels[i]);
+                filter.apply(scratch, strength);
+                pixels[i] = scratch.pack();
+            }
+        });
+        return this;
+    }
+
+    public PointPipeline addHsv(HSVfilters filter, int strength) {
+        operations++;
+        stages.add((pixels, from, to, scratch) -> {
+            double[] hsv = new double[3];
+            for (int i = from; i < to; i++) {
+                pixels[i] = imageProcessor.applyHSV(pixels[i], filter, strength, hsv);
+            }
+        });
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    // number of operations added, before any were merged
+    public int size() {
+        return operations;
+    }
+
+    // Runs every stage over pixels[from, to), a chunk at a time
+    void run(int[] pixels, int from, int to, Pixel scratch) {
+        for (int chunkStart = from; chunkStart < to; chunkStart += CHUNK) {
+            int chunkEnd = Math.min(chunkStart + CHUNK, to);
+            for (Stage stage : stages) {
+                stage.apply(pixels, chunkStart, chunkEnd, scratch);
+            }
+        }
+    }
+
+    public void apply(BmpImage image) {
+        if (stages.isEmpty()) return;
+        if (image.indexed != null) {
+            // every stage is a point operation, so running the palette through them does the whole image
+            int[] palette = image.indexed.palette;
+            run(palette, 0, palette.length, new Pixel(0, 0, 0));
+            return;
+        }
+        int[] pixels = image.pixels;
+        int width = image.width;
+        if (stages.size() == 1 && stages.get(0) instanceof LutStage) {
+            imageProcessor.applyLut(image, ((LutStage) stages.get(0)).lut);
+            return;
+        }
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            run(pixels, startRow * width, endRow * width, new Pixel(0, 0, 0));
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package imageProcessors;
+
+import Models.BmpImage;
+import Models.Pixel;
+
+// Integral image: entry (x, y) holds the per-channel sums of every pixel above and to the left of it,
+// so the sum over any rectangle is four lookups however big the rectangle is.
+// Costs 24 bytes per pixel. Built from a snapshot of the raster, so it can keep serving block means
+// (pixelate, box blurs of any radius) after the image itself has been changed or replaced.
+public class SummedAreaTable {
+    public final int width;
+    public final int height;
+    // (width + 1) x (height + 1), row 0 and column 0 are all zero
+    private final int stride;
+    private final long[] red;
+    private final long[] green;
+    private final long[] blue;
+
+    public SummedAreaTable(BmpImage image) {
+        this(image.indexed != null ? image.indexed.toRgb() : image.pixels, image.width, image.height);
+    }
+
+    public SummedAreaTable(int[] pixels, int width, int height) {
+        long entries = (long) (width + 1) * (height + 1);
+        if (entries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large for a summed-area table: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+        red = new long[(int) entries];
+        green = new long[(int) entries];
+        blue = new long[(int) entries];
+
+        // running sums along each row, rows in parallel
+        ParallelRows.forEachRowRange(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                long r = 0, g = 0, b = 0;
+                int source = y * width;
+                int target = (y + 1) * stride + 1;
+                for (int x = 0; x < width; x++) {
+                    int p = pixels[source + x];
+                    r += (p >> 16) & 0xFF;
+                    g += (p >> 8) & 0xFF;
+                    b += p & 0xFF;
+                    red[target + x] = r;
+                    green[target + x] = g;
+                    blue[target + x] = b;
+                }
+            }
+        });
+        // then down the columns, strips of columns in parallel
+        ParallelRows.forEachRowRange(width, height, (startColumn, endColumn) -> {
+            for (int y = 2; y <= height; y++) {
+                int row = y * stride, previous = row - stride;
+                for (int x = startColumn + 1; x <= endColumn; x++) {
+                    red[row + x] += red[previous + x];
+                    green[row + x] += green[previous + x];
+                    blue[row + x] += blue[previous + x];
+                }
+            }
+        });
+    }
+
+    // Sums over [x0, x1) x [y0, y1). The rectangle is clipped to the image.
+    public long sumRed(int x0, int y0, int x1, int y1) {
+        return sum(red, x0, y0, x1, y1);
+    }
+
+    public long sumGreen(int x0, int y0, int x1, int y1) {
+        return sum(green, x0, y0, x1, y1);
+    }
+
+    public long sumBlue(int x0, int y0, int x1, int y1) {
+        return sum(blue, x0, y0, x1, y1);
+    }
+
+    // Rounded packed mean over [x0, x1) x [y0, y1), divided by area rather than by the pixels inside the image.
+    // Area equal to the clipped pixel count gives the plain block average pixelarise uses; the full
+    // window area gives zero-padded edges like the convolution loops.
+    public int mean(int x0, int y0, int x1, int y1, long area) {
+        if (area <= 0) return 0;
+        int r = (int) Math.round((double) sum(red, x0, y0, x1, y1) / area);
+        int g = (int) Math.round((double) sum(green, x0, y0, x1, y1) / area);
+        int b = (int) Math.round((double) sum(blue, x0, y0, x1, y1) / area);
+        return Pixel.pack(r, g, b);
+    }
+
+    private long sum(long[] table, int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width, x1);
+        y1 = Math.min(height, y1);
+        if (x0 >= x1 || y0 >= y1) return 0;
+        int top = y0 * stride, bottom = y1 * stride;
+        return table[bottom + x1] - table[bottom + x0] - table[top + x1] + table[top + x0];
+    }
+}
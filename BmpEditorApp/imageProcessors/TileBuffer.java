@@ -0,0 +1,76 @@
+package imageProcessors;
+
+import java.util.Arrays;
+
+// Unpacked copy of one tile plus its halo, one int plane per channel.
+// Samples that fall outside the image are zero, which is the same as the convolution loops skipping them.
+// Each worker thread keeps one and grows it as needed, so tiles don't allocate.
+class TileBuffer {
+    int[] red = new int[0];
+    int[] green = new int[0];
+    int[] blue = new int[0];
+    int stride;
+    // intermediate sums for the double separable pass
+    double[] redSums = new double[0];
+    double[] greenSums = new double[0];
+    double[] blueSums = new double[0];
+
+    private static final ThreadLocal<TileBuffer> PER_THREAD = ThreadLocal.withInitial(TileBuffer::new);
+
+    static TileBuffer forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    void ensureCapacity(int size) {
+        if (red.length < size) {
+            red = new int[size];
+            green = new int[size];
+            blue = new int[size];
+        }
+    }
+
+    void ensureSumCapacity(int size) {
+        if (redSums.length < size) {
+            redSums = new double[size];
+            greenSums = new double[size];
+            blueSums = new double[size];
+        }
+    }
+
+    // Copies the bufferWidth x bufferHeight window starting at (startX, startY), which may hang off the image edges
+    void load(int[] pixels, int width, int height, int startX, int startY, int bufferWidth, int bufferHeight) {
+        ensureCapacity(bufferWidth * bufferHeight);
+        stride = bufferWidth;
+        int copyStartX = Math.max(0, startX);
+        int copyEndX = Math.min(width, startX + bufferWidth);
+        for (int y = 0; y < bufferHeight; y++) {
+            int bufferRow = y * bufferWidth;
+            int imageY = startY + y;
+            if (imageY < 0 || imageY >= height || copyStartX >= copyEndX) {
+                Arrays.fill(red, bufferRow, bufferRow + bufferWidth, 0);
+                Arrays.fill(green, bufferRow, bufferRow + bufferWidth, 0);
+                Arrays.fill(blue, bufferRow, bufferRow + bufferWidth, 0);
+                continue;
+            }
+            int leftPad = copyStartX - startX;
+            int rightPadStart = copyEndX - startX;
+            for (int x = 0; x < leftPad; x++) {
+                red[bufferRow + x] = 0;
+                green[bufferRow + x] = 0;
+                blue[bufferRow + x] = 0;
+            }
+            int imageRow = imageY * width;
+            for (int x = copyStartX, b = bufferRow + leftPad; x < copyEndX; x++, b++) {
+                int rgb = pixels[imageRow + x];
+                red[b] = (rgb >> 16) & 0xFF;
+                green[b] = (rgb >> 8) & 0xFF;
+                blue[b] = rgb & 0xFF;
+            }
+            for (int x = rightPadStart; x < bufferWidth; x++) {
+                red[bufferRow + x] = 0;
+                green[bufferRow + x] = 0;
+                blue[bufferRow + x] = 0;
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package imageProcessors;
 
+import Filters.ChannelSeparable;
 import Filters.Filters;
 import Kernels.Kernel;
 import Models.BmpImage;
@@ -7,132 +8,769 @@ import Models.Pixel;
 import Models.HSV;
 import Filters.HSVfilters;
 
+import java.util.Arrays;
+
 
 public class imageProcessor {
     public static void applyFilter(BmpImage image, Filters filter,int Strength)
     {
-        int height = image.header.height;
-        int width = image.header.width;
-        Pixel[][] pixelgrid = image.pixelGrid;
-        for(int i=0;i<height;i++)
-        {
-            for(int j=0;j<width;j++) {
-               filter.apply(pixelgrid[i][j],Strength);
+        if (filter instanceof ChannelSeparable) {
+            applyLut(image, FilterLut.compile((ChannelSeparable) filter, Strength));
+            return;
+        }
+        if (image.indexed != null) {
+            // a point filter only sees the colour, so filtering the palette filters every pixel
+            int[] palette = image.indexed.palette;
+            Pixel scratch = new Pixel(0, 0, 0);
+            for (int i = 0; i < palette.length; i++)
+            {
+                scratch.load(palette[i]);
+                filter.apply(scratch, Strength);
+                palette[i] = scratch.pack();
+            }
+            return;
+        }
+        int[] pixels = image.pixels;
+        int width = image.width;
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            // one scratch Pixel per row band so the Filters implementations keep working unchanged
+            Pixel scratch = new Pixel(0, 0, 0);
+            for(int i=startRow*width;i<endRow*width;i++)
+            {
+                scratch.load(pixels[i]);
+                filter.apply(scratch,Strength);
+                pixels[i] = scratch.pack();
             }
+        });
+    }
+
+    // Maps every pixel through a compiled table. No virtual call or arithmetic per pixel.
+    public static void applyLut(BmpImage image, FilterLut lut)
+    {
+        int[] red = lut.red, green = lut.green, blue = lut.blue;
+        if (image.indexed != null) {
+            int[] palette = image.indexed.palette;
+            for (int i = 0; i < palette.length; i++)
+            {
+                int rgb = palette[i];
+                palette[i] = red[(rgb >> 16) & 0xFF] | green[(rgb >> 8) & 0xFF] | blue[rgb & 0xFF];
+            }
+            return;
         }
+        int[] pixels = image.pixels;
+        int width = image.width;
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            for(int i=startRow*width;i<endRow*width;i++)
+            {
+                int rgb = pixels[i];
+                pixels[i] = red[(rgb >> 16) & 0xFF] | green[(rgb >> 8) & 0xFF] | blue[rgb & 0xFF];
+            }
+        });
     }
 
     public static void convolution(BmpImage image, Kernel kernel)
     {
-        int height = image.header.height;
-        int width = image.header.width;
-        Pixel[][] pixelgrid = image.pixelGrid;
-        Pixel[][] newGrid = new Pixel[height][width];
-        double[][] matrix = kernel.matrix;
-        double divisor = kernel.divisor;
-        int offset = kernel.offset;
+        image.expandIndexed();
+        int height = image.height;
+        int width = image.width;
+        int[] pixels = image.pixels;
+        int[] newPixels = new int[pixels.length];
+        FixedPointDivisor fixed = fixedPointDivisor(kernel);
+        if (useFFT(kernel)) {
+            FFTConvolution.convolve(pixels, newPixels, width, height, kernel);
+        } else if (useSeparable(kernel)) {
+            if (fixed != null && kernel.integerColumn != null) {
+                ParallelRows.forEachTile(width, height, SEPARABLE_TILE_WIDTH, SEPARABLE_TILE_HEIGHT, (startX, startY, endX, endY) ->
+                        convolveTileSeparableFixed(pixels, newPixels, width, height, kernel, fixed, startX, startY, endX, endY));
+            } else {
+                ParallelRows.forEachTile(width, height, SEPARABLE_TILE_WIDTH, SEPARABLE_TILE_HEIGHT, (startX, startY, endX, endY) ->
+                        convolveTileSeparable(pixels, newPixels, width, height, kernel, startX, startY, endX, endY));
+            }
+        } else if (fixed != null) {
+            ParallelRows.forEachTile(width, height, TILE_WIDTH, TILE_HEIGHT, (startX, startY, endX, endY) ->
+                    convolveTileFixed(pixels, newPixels, width, height, kernel, fixed, startX, startY, endX, endY));
+        } else {
+            ParallelRows.forEachTile(width, height, TILE_WIDTH, TILE_HEIGHT, (startX, startY, endX, endY) ->
+                    convolveTile(pixels, newPixels, width, height, kernel, startX, startY, endX, endY));
+        }
+        image.pixels = newPixels;
+    }
+
+    // Fixed point: sum / divisor == (sum * reciprocal) >> FIXED_SHIFT with reciprocal = 2^FIXED_SHIFT / divisor.
+    private static final int FIXED_SHIFT = 32;
+    private static final long FIXED_HALF = 1L << (FIXED_SHIFT - 1);
+
+    // The reciprocal is rounded up for positive sums and down for negative ones, so the estimate never lands
+    // below the true quotient and exact .5 ties round the same way Math.round does. Anything else is at most 1 LSB off.
+    private static final class FixedPointDivisor
+    {
+        final long up;
+        final long down;
+        final int offset;
+
+        FixedPointDivisor(double divisor, int offset)
+        {
+            double reciprocal = Math.scalb(1.0, FIXED_SHIFT) / divisor;
+            this.up = (long) Math.ceil(reciprocal);
+            this.down = (long) Math.floor(reciprocal);
+            this.offset = offset;
+        }
+
+        int divide(int sum)
+        {
+            long reciprocal = sum < 0 ? down : up;
+            return (int) ((sum * reciprocal + FIXED_HALF) >> FIXED_SHIFT) + offset;
+        }
+    }
+
+    // Returns null when the kernel can't take the integer path: non-integer weights, a divisor below 1
+    // (the reciprocal would not fit), or weights big enough that an int sum or the long product could overflow.
+    private static FixedPointDivisor fixedPointDivisor(Kernel kernel)
+    {
+        if (!kernel.isIntegral() || Double.isNaN(kernel.divisor) || kernel.divisor < 1.0) {
+            return null;
+        }
+        long weightTotal = 0;
+        for (int[] row : kernel.integerMatrix) {
+            for (int w : row) weightTotal += Math.abs(w);
+        }
+        if (kernel.integerColumn != null) {
+            // the separable path keeps the horizontal sums in ints too
+            long rowTotal = 0;
+            for (int w : kernel.integerRow) rowTotal += Math.abs(w);
+            long columnTotal = 0;
+            for (int w : kernel.integerColumn) columnTotal += Math.abs(w);
+            weightTotal = Math.max(weightTotal, rowTotal * columnTotal);
+        }
+        if (weightTotal * 255 >= (1L << 30)) {
+            return null;
+        }
+        return new FixedPointDivisor(kernel.divisor, kernel.offset);
+    }
+
+    private static void convolveTileFixed(int[] pixels, int[] newPixels, int width, int height, Kernel kernel, FixedPointDivisor fixed,
+                                          int startX, int startY, int endX, int endY)
+    {
+        int[][] matrix = kernel.integerMatrix;
         int kernelHeight = matrix.length;
         int kernelWidth = matrix[0].length;
         int kernelCenterY = kernelHeight / 2;
         int kernelCenterX = kernelWidth / 2;
-        double sumR,sumG,sumB;
-        for(int i=0;i<height;i++)
+
+        TileBuffer tile = TileBuffer.forCurrentThread();
+        tile.load(pixels, width, height, startX - kernelCenterX, startY - kernelCenterY,
+                endX - startX + kernelWidth - 1, endY - startY + kernelHeight - 1);
+        int[] red = tile.red, green = tile.green, blue = tile.blue;
+        int stride = tile.stride;
+
+        for (int i = startY; i < endY; i++)
         {
-            for(int j=0;j<width;j++)
+            for (int j = startX; j < endX; j++)
             {
-                 sumR = 0.0;
-                 sumG = 0.0;
-                 sumB = 0.0;
-
+                int sumR = 0, sumG = 0, sumB = 0;
+                int windowStart = (i - startY) * stride + (j - startX);
                 for (int ky = 0; ky < kernelHeight; ky++)
                 {
-                    for (int kx = 0; kx < kernelWidth; kx++)
+                    int[] weights = matrix[ky];
+                    int b = windowStart + ky * stride;
+                    for (int kx = 0; kx < kernelWidth; kx++, b++)
                     {
+                        int weight = weights[kx];
+                        sumR += red[b] * weight;
+                        sumG += green[b] * weight;
+                        sumB += blue[b] * weight;
+                    }
+                }
+                newPixels[i * width + j] = Pixel.pack(fixed.divide(sumR), fixed.divide(sumG), fixed.divide(sumB));
+            }
+        }
+    }
 
-                        int inputY = i + (ky - kernelCenterY);
-                        int inputX = j + (kx - kernelCenterX);
+    // Same two passes as convolveTileSeparable, accumulating in ints
+    private static void convolveTileSeparableFixed(int[] pixels, int[] newPixels, int width, int height, Kernel kernel, FixedPointDivisor fixed,
+                                                   int startX, int startY, int endX, int endY)
+    {
+        int[] column = kernel.integerColumn;
+        int[] row = kernel.integerRow;
+        int kernelCenterY = column.length / 2;
+        int kernelCenterX = row.length / 2;
+
+        int firstRow = Math.max(0, startY - kernelCenterY);
+        int lastRow = Math.min(height, endY + (column.length - 1 - kernelCenterY));
+        int tileWidth = endX - startX;
+        TileBuffer tile = TileBuffer.forCurrentThread();
+        tile.ensureCapacity((lastRow - firstRow) * tileWidth);
+        int[] rowR = tile.red, rowG = tile.green, rowB = tile.blue;
+
+        for (int i = firstRow; i < lastRow; i++)
+        {
+            int rowStart = i * width;
+            int bandStart = (i - firstRow) * tileWidth - startX;
+            for (int j = startX; j < endX; j++)
+            {
+                int sumR = 0, sumG = 0, sumB = 0;
+                int kxStart = Math.max(0, kernelCenterX - j);
+                int kxEnd = Math.min(row.length, width - j + kernelCenterX);
+                for (int kx = kxStart; kx < kxEnd; kx++)
+                {
+                    int neighbor = pixels[rowStart + j + kx - kernelCenterX];
+                    int weight = row[kx];
+                    sumR += ((neighbor >> 16) & 0xFF) * weight;
+                    sumG += ((neighbor >> 8) & 0xFF) * weight;
+                    sumB += (neighbor & 0xFF) * weight;
+                }
+                rowR[bandStart + j] = sumR;
+                rowG[bandStart + j] = sumG;
+                rowB[bandStart + j] = sumB;
+            }
+        }
 
-                        if (inputY >= 0 && inputY < height && inputX >= 0 && inputX < width) {
-                            Pixel neighborPixel = pixelgrid[inputY][inputX];
+        for (int i = startY; i < endY; i++)
+        {
+            int kyStart = Math.max(0, kernelCenterY - i);
+            int kyEnd = Math.min(column.length, height - i + kernelCenterY);
+            for (int j = startX; j < endX; j++)
+            {
+                int sumR = 0, sumG = 0, sumB = 0;
+                for (int ky = kyStart; ky < kyEnd; ky++)
+                {
+                    int index = (i + ky - kernelCenterY - firstRow) * tileWidth + j - startX;
+                    int weight = column[ky];
+                    sumR += rowR[index] * weight;
+                    sumG += rowG[index] * weight;
+                    sumB += rowB[index] * weight;
+                }
+                newPixels[i * width + j] = Pixel.pack(fixed.divide(sumR), fixed.divide(sumG), fixed.divide(sumB));
+            }
+        }
+    }
 
-                            if (neighborPixel != null) {
-                                double weight = matrix[ky][kx];
-                                sumR += neighborPixel.red * weight;
-                                sumG += neighborPixel.green * weight;
-                                sumB += neighborPixel.blue * weight;
-                            }
-                        }
-                    }
+    // Output tile size for the 2D engines. With a 9x9 halo the three unpacked planes are about 70 KB,
+    // small enough to stay in L2 while every output pixel in the tile reads them
+    private static final int TILE_WIDTH = 128;
+    private static final int TILE_HEIGHT = 32;
+    // The separable engines recompute the horizontal pass for the halo rows, so their tiles are taller
+    // to keep that overhead near kernelHeight / 64. Their scratch holds only the horizontal sums.
+    private static final int SEPARABLE_TILE_WIDTH = 256;
+    private static final int SEPARABLE_TILE_HEIGHT = 64;
+
+    // Direct 2D cost grows with kernel area, the FFT path's cost barely moves with kernel size.
+    // Separable kernels stay on their two 1D passes until those get long as well.
+    private static final int FFT_MIN_TAPS = 11 * 11;
+    private static final int FFT_MIN_SEPARABLE_TAPS = 64;
+
+    private static boolean useFFT(Kernel kernel)
+    {
+        int kernelHeight = kernel.matrix.length;
+        int kernelWidth = kernel.matrix[0].length;
+        if (useSeparable(kernel)) {
+            return kernelHeight + kernelWidth >= FFT_MIN_SEPARABLE_TAPS;
+        }
+        return kernelHeight * kernelWidth >= FFT_MIN_TAPS;
+    }
+
+    // two 1D passes cost kh + kw taps instead of kh * kw, only worth it when that is actually fewer
+    private static boolean useSeparable(Kernel kernel)
+    {
+        int kernelHeight = kernel.matrix.length;
+        int kernelWidth = kernel.matrix[0].length;
+        return kernel.isSeparable() && kernelHeight + kernelWidth < kernelHeight * kernelWidth;
+    }
+
+    // Horizontal pass over the tile plus a kernel-radius halo of rows above and below, then a vertical pass.
+    // Out-of-range taps are skipped in each pass exactly like the 2D loop skips them, so the sums are the same.
+    private static void convolveTileSeparable(int[] pixels, int[] newPixels, int width, int height, Kernel kernel,
+                                              int startX, int startY, int endX, int endY)
+    {
+        double[] column = kernel.columnVector;
+        double[] row = kernel.rowVector;
+        double divisor = kernel.divisor;
+        int offset = kernel.offset;
+        int kernelCenterY = column.length / 2;
+        int kernelCenterX = row.length / 2;
+
+        int firstRow = Math.max(0, startY - kernelCenterY);
+        int lastRow = Math.min(height, endY + (column.length - 1 - kernelCenterY));
+        int tileWidth = endX - startX;
+        TileBuffer tile = TileBuffer.forCurrentThread();
+        tile.ensureSumCapacity((lastRow - firstRow) * tileWidth);
+        double[] rowR = tile.redSums, rowG = tile.greenSums, rowB = tile.blueSums;
+
+        for (int i = firstRow; i < lastRow; i++)
+        {
+            int rowStart = i * width;
+            int bandStart = (i - firstRow) * tileWidth - startX;
+            for (int j = startX; j < endX; j++)
+            {
+                double sumR = 0.0, sumG = 0.0, sumB = 0.0;
+                int kxStart = Math.max(0, kernelCenterX - j);
+                int kxEnd = Math.min(row.length, width - j + kernelCenterX);
+                for (int kx = kxStart; kx < kxEnd; kx++)
+                {
+                    int neighbor = pixels[rowStart + j + kx - kernelCenterX];
+                    double weight = row[kx];
+                    sumR += ((neighbor >> 16) & 0xFF) * weight;
+                    sumG += ((neighbor >> 8) & 0xFF) * weight;
+                    sumB += (neighbor & 0xFF) * weight;
                 }
+                rowR[bandStart + j] = sumR;
+                rowG[bandStart + j] = sumG;
+                rowB[bandStart + j] = sumB;
+            }
+        }
 
+        for (int i = startY; i < endY; i++)
+        {
+            int kyStart = Math.max(0, kernelCenterY - i);
+            int kyEnd = Math.min(column.length, height - i + kernelCenterY);
+            for (int j = startX; j < endX; j++)
+            {
+                double sumR = 0.0, sumG = 0.0, sumB = 0.0;
+                for (int ky = kyStart; ky < kyEnd; ky++)
+                {
+                    int index = (i + ky - kernelCenterY - firstRow) * tileWidth + j - startX;
+                    double weight = column[ky];
+                    sumR += rowR[index] * weight;
+                    sumG += rowG[index] * weight;
+                    sumB += rowB[index] * weight;
+                }
                 int newR = (int) Math.round((sumR / divisor) + offset);
                 int newG = (int) Math.round((sumG / divisor) + offset);
                 int newB = (int) Math.round((sumB / divisor) + offset);
 
-                newR = Math.max(0, Math.min(255, newR));
-                newG = Math.max(0, Math.min(255, newG));
-                newB = Math.max(0, Math.min(255, newB));
+                newPixels[i * width + j] = Pixel.pack(newR, newG, newB);
+            }
+        }
+    }
+
+    // Convolves one output tile. The tile and its kernel-radius halo are unpacked into a small per-thread
+    // buffer first, so the inner loop reads cache-resident planes with no bounds checks or shifts.
+    private static void convolveTile(int[] pixels, int[] newPixels, int width, int height, Kernel kernel,
+                                     int startX, int startY, int endX, int endY)
+    {
+        double[][] matrix = kernel.matrix;
+        double divisor = kernel.divisor;
+        int offset = kernel.offset;
+        int kernelHeight = matrix.length;
+        int kernelWidth = matrix[0].length;
+        int kernelCenterY = kernelHeight / 2;
+        int kernelCenterX = kernelWidth / 2;
 
-                newGrid[i][j] = new Pixel(newR, newG, newB);
+        TileBuffer tile = TileBuffer.forCurrentThread();
+        tile.load(pixels, width, height, startX - kernelCenterX, startY - kernelCenterY,
+                endX - startX + kernelWidth - 1, endY - startY + kernelHeight - 1);
+        int[] red = tile.red, green = tile.green, blue = tile.blue;
+        int stride = tile.stride;
 
+        double sumR,sumG,sumB;
+        for(int i=startY;i<endY;i++)
+        {
+            for(int j=startX;j<endX;j++)
+            {
+                sumR = 0.0;
+                sumG = 0.0;
+                sumB = 0.0;
+                int windowStart = (i - startY) * stride + (j - startX);
+                for (int ky = 0; ky < kernelHeight; ky++)
+                {
+                    double[] weights = matrix[ky];
+                    int b = windowStart + ky * stride;
+                    for (int kx = 0; kx < kernelWidth; kx++, b++)
+                    {
+                        double weight = weights[kx];
+                        sumR += red[b] * weight;
+                        sumG += green[b] * weight;
+                        sumB += blue[b] * weight;
+                    }
+                }
+
+                int newR = (int) Math.round((sumR / divisor) + offset);
+                int newG = (int) Math.round((sumG / divisor) + offset);
+                int newB = (int) Math.round((sumB / divisor) + offset);
+
+                newPixels[i * width + j] = Pixel.pack(newR, newG, newB);
             }
         }
-        image.pixelGrid = newGrid;
     }
 
     public static void applyHSVfilter(BmpImage image, HSVfilters filter, int Strength)
     {
-        int height = image.header.height;
-        int width = image.header.width;
-        Pixel[][] pixelgrid = image.pixelGrid;
-        for(int i=0;i<height;i++)
-        {
-            for(int j=0;j<width;j++) {
+        if (image.indexed != null) {
+            int[] palette = image.indexed.palette;
+            double[] hsv = new double[3];
+            for (int i = 0; i < palette.length; i++)
+            {
+                palette[i] = applyHSV(palette[i], filter, Strength, hsv);
+            }
+            return;
+        }
+        int[] pixels = image.pixels;
+        int width = image.width;
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            double[] hsv = new double[3]; // scratch for the whole band
+            for(int i=startRow*width;i<endRow*width;i++)
+            {
+                pixels[i] = applyHSV(pixels[i], filter, Strength, hsv);
+            }
+        });
+    }
 
-                Pixel currentPixel = pixelgrid[i][j];
-                HSV hsvValues = RGBtoHSV(currentPixel);
-                filter.apply(hsvValues,Strength);
-                Pixel newPixel = HSVtoRGB(hsvValues);
-                pixelgrid[i][j] = newPixel;
+    // Runs every pixel through a prebuilt ColorLut, e.g. one shared by a whole batch of images
+    public static void applyColorLut(BmpImage image, ColorLut lut)
+    {
+        if (image.indexed != null) {
+            int[] palette = image.indexed.palette;
+            for (int i = 0; i < palette.length; i++)
+            {
+                palette[i] = lut.map(palette[i]);
             }
+            return;
         }
+        int[] pixels = image.pixels;
+        int width = image.width;
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            for(int i=startRow*width;i<endRow*width;i++)
+            {
+                pixels[i] = lut.map(pixels[i]);
+            }
+        });
     }
-    public static void rotateleft(BmpImage image)
+
+    // hsv is caller-owned scratch, so converting a pixel allocates nothing
+    static int applyHSV(int rgb, HSVfilters filter, int Strength, double[] hsv)
+    {
+        RGBtoHSV(rgb, hsv);
+        filter.apply(hsv,Strength);
+        return HSVtoRGB(hsv);
+    }
+    // Sobel edge magnitude in one pass: greyscale, Gx, Gy and magnitude per pixel from a sliding window
+    // of three greyscale rows. Gives the same result as greyScale, convolution with SOBEL_X and SOBEL_Y,
+    // then the magnitude of the two, including the 0..255 clamp each convolution applies to its gradient.
+    public static void sobelEdges(BmpImage image)
     {
-        int height = image.header.height;
-        int width = image.header.width;
-        Pixel[][] newGrid = new Pixel[width][height];
-        for(int i=0;i<height;i++)
+        image.expandIndexed();
+        image.pixels = sobelEdges(image.pixels, image.width, image.height);
+    }
+
+    // Same, leaving the source raster alone and returning the edge map
+    public static int[] sobelEdges(int[] pixels, int width, int height)
+    {
+        int[] output = new int[width * height];
+        ParallelRows.forEachRowRange(height, width, (startRow, endRow) ->
+                sobelRows(pixels, output, width, height, startRow, endRow));
+        return output;
+    }
+
+    private static void sobelRows(int[] pixels, int[] output, int width, int height, int startRow, int endRow)
+    {
+        // one zero column on each side stands in for the samples the convolution skips at the edges
+        int[] above = new int[width + 2];
+        int[] current = new int[width + 2];
+        int[] below = new int[width + 2];
+        greyRow(pixels, width, height, startRow - 1, above);
+        greyRow(pixels, width, height, startRow, current);
+        for (int y = startRow; y < endRow; y++)
         {
-            for(int j=0;j<width;j++) {
-                newGrid[j][height-1-i] = image.pixelGrid[i][j];
+            greyRow(pixels, width, height, y + 1, below);
+            int rowStart = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                int a0 = above[x], a1 = above[x + 1], a2 = above[x + 2];
+                int b0 = below[x], b1 = below[x + 1], b2 = below[x + 2];
+                int gx = (a2 - a0) + 2 * (current[x + 2] - current[x]) + (b2 - b0);
+                int gy = (b0 + 2 * b1 + b2) - (a0 + 2 * a1 + a2);
+                gx = Math.max(0, Math.min(255, gx));
+                gy = Math.max(0, Math.min(255, gy));
+                int magnitude = Math.min(255, (int) Math.sqrt((double) (gx * gx + gy * gy)));
+                output[rowStart + x] = magnitude * 0x010101;
             }
+            int[] recycled = above;
+            above = current;
+            current = below;
+            below = recycled;
         }
-        image.pixelGrid = newGrid;
     }
-    public static void rotateright(BmpImage image)
+
+    // Greyscale of row y into row[1..width], same weights and truncation as the greyScale filter. Zero outside the image.
+    private static void greyRow(int[] pixels, int width, int height, int y, int[] row)
     {
-        int height = image.header.height;
-        int width = image.header.width;
-        Pixel[][] newGrid = new Pixel[width][height];
-        for(int i=0;i<height;i++)
+        if (y < 0 || y >= height)
         {
-            for(int j=0;j<width;j++) {
-                newGrid[width-1-j][i] = image.pixelGrid[i][j];
-            }
+            Arrays.fill(row, 0);
+            return;
         }
-        image.pixelGrid = newGrid;
+        int rowStart = y * width;
+        for (int x = 0; x < width; x++)
+        {
+            int p = pixels[rowStart + x];
+            row[x + 1] = (int) (0.299 * ((p >> 16) & 0xFF) + 0.587 * ((p >> 8) & 0xFF) + 0.114 * (p & 0xFF));
+        }
+    }
+
+    // Rotations walk the source in square tiles so both the rows read and the columns written stay in cache,
+    // and the tiles run in parallel. 64 x 64 ints is 16 KB each way.
+    private static final int ROTATE_TILE = 64;
+
+    public static void rotateleft(BmpImage image)
+    {
+        image.expandIndexed();
+        int height = image.height;
+        int width = image.width;
+        int[] pixels = image.pixels;
+        // new image is height pixels wide and width pixels tall
+        int[] newPixels = new int[pixels.length];
+        ParallelRows.forEachTile(width, height, ROTATE_TILE, ROTATE_TILE, (startX, startY, endX, endY) -> {
+            for(int j=startX;j<endX;j++)
+            {
+                int target = j * height + (height-1);
+                for(int i=startY;i<endY;i++) {
+                    newPixels[target - i] = pixels[i * width + j];
+                }
+            }
+        });
+        image.setRaster(newPixels, height, width);
+    }
+    public static void rotateright(BmpImage image)
+    {
+        image.expandIndexed();
+        int height = image.height;
+        int width = image.width;
+        int[] pixels = image.pixels;
+        int[] newPixels = new int[pixels.length];
+        ParallelRows.forEachTile(width, height, ROTATE_TILE, ROTATE_TILE, (startX, startY, endX, endY) -> {
+            for(int j=startX;j<endX;j++)
+            {
+                int target = (width-1-j) * height;
+                for(int i=startY;i<endY;i++) {
+                    newPixels[target + i] = pixels[i * width + j];
+                }
+            }
+        });
+        image.setRaster(newPixels, height, width);
+    }
+
+    // The 180 degree turn and the flips keep the dimensions, so they swap pixels in place and allocate nothing
+
+    public static void rotate180(BmpImage image)
+    {
+        image.expandIndexed();
+        int[] pixels = image.pixels;
+        int last = pixels.length - 1;
+        int half = pixels.length / 2;
+        // each index below half swaps with its mirror above it, split into blocks of 4096 for the pool
+        int blocks = (half + 4095) / 4096;
+        ParallelRows.forEachRowRange(blocks, 4096, (startBlock, endBlock) -> {
+            for(int k=startBlock*4096;k<Math.min(endBlock*4096, half);k++)
+            {
+                int t = pixels[k];
+                pixels[k] = pixels[last - k];
+                pixels[last - k] = t;
+            }
+        });
+    }
+
+    // Mirror left to right
+    public static void flipHorizontal(BmpImage image)
+    {
+        image.expandIndexed();
+        int[] pixels = image.pixels;
+        int width = image.width;
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            for(int y=startRow;y<endRow;y++)
+            {
+                for(int left=y*width, right=left+width-1;left<right;left++, right--)
+                {
+                    int t = pixels[left];
+                    pixels[left] = pixels[right];
+                    pixels[right] = t;
+                }
+            }
+        });
+    }
+
+    // Mirror top to bottom
+    public static void flipVertical(BmpImage image)
+    {
+        image.expandIndexed();
+        int[] pixels = image.pixels;
+        int width = image.width;
+        int height = image.height;
+        ParallelRows.forEachRowRange(height / 2, width * 2, (startRow, endRow) -> {
+            for(int y=startRow;y<endRow;y++)
+            {
+                int top = y * width;
+                int bottom = (height - 1 - y) * width;
+                for(int x=0;x<width;x++)
+                {
+                    int t = pixels[top + x];
+                    pixels[top + x] = pixels[bottom + x];
+                    pixels[bottom + x] = t;
+                }
+            }
+        });
     }
 
     public static void pixelarise(BmpImage image,int blockSize)
     {
-        int height = image.header.height;
-        int width = image.header.width;
-        Pixel[][] pixelgrid = image.pixelGrid;
-        Pixel[][] outputGrid = new Pixel[height][width];
+        image.expandIndexed();
+        int height = image.height;
+        int width = image.width;
+        int block = blockSizeFor(image, blockSize);
+        int[] pixels = image.pixels;
+        int[] output = new int[pixels.length];
+        // parallel work is split on whole block rows so no block straddles two bands
+        int blockRows = (height + block - 1) / block;
+        ParallelRows.forEachRowRange(blockRows, blockRowPixels(width, block), (startBlock, endBlock) ->
+                pixelariseRows(pixels, output, width, height, block,
+                        startBlock * block, Math.min(endBlock * block, height)));
+        image.pixels = output;
+    }
+
+    // A block bigger than the image covers the same pixels as one the image's size, and keeps the row maths in int
+    private static int blockSizeFor(BmpImage image, int blockSize)
+    {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Pixelate block size must be at least 1, got " + blockSize);
+        }
+        return Math.min(blockSize, Math.max(1, Math.max(image.width, image.height)));
+    }
+
+    private static int blockRowPixels(int width, int blockSize)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, (long) width * blockSize);
+    }
+
+    // Pixelate from a prebuilt table, e.g. one shared with boxBlur or several block sizes over the same source.
+    // Each block is four lookups per channel. Without a table to reuse the plain pixelarise is faster,
+    // since it already reads every pixel exactly once.
+    public static void pixelarise(BmpImage image, int blockSize, SummedAreaTable table)
+    {
+        image.expandIndexed();
+        checkTable(image, table);
+        int height = image.height;
+        int width = image.width;
+        int block = blockSizeFor(image, blockSize);
+        int[] output = new int[image.pixels.length];
+        int blockRows = (height + block - 1) / block;
+        ParallelRows.forEachRowRange(blockRows, blockRowPixels(width, block), (startBlock, endBlock) -> {
+            for (int i = startBlock * block; i < Math.min(endBlock * block, height); i += block)
+            {
+                int blockYEnd = Math.min(i + block, height);
+                for (int j = 0; j < width; j += block)
+                {
+                    int blockXEnd = Math.min(j + block, width);
+                    int averagePixel = table.mean(j, i, blockXEnd, blockYEnd, (long) (blockXEnd - j) * (blockYEnd - i));
+                    for (int py = i; py < blockYEnd; py++) {
+                        Arrays.fill(output, py * width + j, py * width + blockXEnd, averagePixel);
+                    }
+                }
+            }
+        });
+        image.pixels = output;
+    }
+
+    // Mean over the (2 * radius + 1)^2 window around each pixel, in constant time per pixel whatever the radius.
+    // Samples outside the image count as zero, same as convolving with an all-ones kernel.
+    public static void boxBlur(BmpImage image, int radius)
+    {
+        boxBlur(image, radius, new SummedAreaTable(image));
+    }
+
+    public static void boxBlur(BmpImage image, int radius, SummedAreaTable table)
+    {
+        image.expandIndexed();
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius cannot be negative");
+        }
+        checkTable(image, table);
+        int width = image.width;
+        long area = (long) (2 * radius + 1) * (2 * radius + 1);
+        int[] output = new int[image.pixels.length];
+        ParallelRows.forEachRowRange(image.height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    output[y * width + x] = table.mean(x - radius, y - radius, x + radius + 1, y + radius + 1, area);
+                }
+            }
+        });
+        image.pixels = output;
+    }
+
+    // Shrinks to targetWidth x targetHeight by averaging the block of source pixels behind each output pixel.
+    // Every source pixel is read once, so a 40 MP image comes down to screen size in one pass. The source is not touched.
+    public static BmpImage downsample(BmpImage image, int targetWidth, int targetHeight)
+    {
+        int width = image.width;
+        int height = image.height;
+        if (targetWidth < 1 || targetHeight < 1 || targetWidth > width || targetHeight > height) {
+            throw new IllegalArgumentException("Cannot downsample " + width + "x" + height
+                    + " to " + targetWidth + "x" + targetHeight);
+        }
+        // leaves an indexed source indexed
+        int[] pixels = image.indexed != null ? image.indexed.toRgb() : image.pixels;
+        int[] output = new int[targetWidth * targetHeight];
+        // output column x averages source columns [colStart[x], colStart[x + 1])
+        int[] colStart = new int[targetWidth + 1];
+        for (int x = 0; x <= targetWidth; x++) {
+            colStart[x] = (int) ((long) x * width / targetWidth);
+        }
+        int sourceRowsPerRow = (height + targetHeight - 1) / targetHeight;
+        ParallelRows.forEachRowRange(targetHeight, width * sourceRowsPerRow, (startRow, endRow) -> {
+            long[] sums = new long[targetWidth * 3];
+            for (int y = startRow; y < endRow; y++)
+            {
+                int y0 = (int) ((long) y * height / targetHeight);
+                int y1 = (int) ((long) (y + 1) * height / targetHeight);
+                Arrays.fill(sums, 0);
+                for (int sy = y0; sy < y1; sy++)
+                {
+                    int rowStart = sy * width;
+                    for (int x = 0; x < targetWidth; x++)
+                    {
+                        long r = 0, g = 0, b = 0;
+                        for (int sx = colStart[x]; sx < colStart[x + 1]; sx++)
+                        {
+                            int p = pixels[rowStart + sx];
+                            r += (p >> 16) & 0xFF;
+                            g += (p >> 8) & 0xFF;
+                            b += p & 0xFF;
+                        }
+                        sums[x * 3] += r;
+                        sums[x * 3 + 1] += g;
+                        sums[x * 3 + 2] += b;
+                    }
+                }
+                for (int x = 0; x < targetWidth; x++)
+                {
+                    long count = (long) (colStart[x + 1] - colStart[x]) * (y1 - y0);
+                    long half = count / 2;
+                    output[y * targetWidth + x] = Pixel.pack((int) ((sums[x * 3] + half) / count),
+                            (int) ((sums[x * 3 + 1] + half) / count), (int) ((sums[x * 3 + 2] + half) / count));
+                }
+            }
+        });
+
+        BmpImage small = new BmpImage(image.header.copy(), targetWidth, targetHeight, output);
+        small.header.width = targetWidth;
+        small.header.height = targetHeight;
+        return small;
+    }
+
+    private static void checkTable(BmpImage image, SummedAreaTable table)
+    {
+        if (table.width != image.width || table.height != image.height) {
+            throw new IllegalArgumentException("Summed-area table is " + table.width + "x" + table.height
+                    + " but the image is " + image.width + "x" + image.height);
+        }
+    }
+
+    private static void pixelariseRows(int[] pixels, int[] output, int width, int height, int blockSize, int startRow, int endRow)
+    {
         long sumR=0,sumG=0,sumB=0;
         int count=0,avgR=0,avgG=0,avgB=0;
-        for(int i=0;i<height;i+=blockSize)
+        for(int i=startRow;i<endRow;i+=blockSize)
         {
             for(int j=0;j<width;j+=blockSize)
             {
@@ -144,15 +782,14 @@ public class imageProcessor {
                 int blockXEnd = Math.min(j + blockSize, width);
                 for (int py = i; py < blockYEnd; py++)
                 {
+                    int rowStart = py * width;
                     for (int px = j; px < blockXEnd; px++)
                     {
-                        Pixel p = pixelgrid[py][px];
-                        if (p != null) {
-                            sumR += p.red;
-                            sumG += p.green;
-                            sumB += p.blue;
-                            count++;
-                        }
+                        int p = pixels[rowStart + px];
+                        sumR += (p >> 16) & 0xFF;
+                        sumG += (p >> 8) & 0xFF;
+                        sumB += p & 0xFF;
+                        count++;
                     }
                 }
                 avgR=0;
@@ -162,28 +799,24 @@ public class imageProcessor {
                     avgR = (int) Math.round((double) sumR / count);
                     avgG = (int) Math.round((double) sumG / count);
                     avgB = (int) Math.round((double) sumB / count);
-
-                    avgR = Math.max(0, Math.min(255, avgR));
-                    avgG = Math.max(0, Math.min(255, avgG));
-                    avgB = Math.max(0, Math.min(255, avgB));
                 }
-                Pixel averagePixel = new Pixel(avgR, avgG, avgB);
+                int averagePixel = Pixel.pack(avgR, avgG, avgB);
 
                 for (int py = i; py < blockYEnd; py++) {
+                    int rowStart = py * width;
                     for (int px = j; px < blockXEnd; px++) {
-                        outputGrid[py][px] = averagePixel;
+                        output[rowStart + px] = averagePixel;
                     }
                 }
             }
         }
-        image.pixelGrid = outputGrid;
     }
 
-    private static HSV RGBtoHSV(Pixel pixel) {
+    private static void RGBtoHSV(int rgb, double[] hsv) {
         // Normalize R, G, B to 0.0 - 1.0 range
-        double r = pixel.red / 255.0;
-        double g = pixel.green / 255.0;
-        double b = pixel.blue / 255.0;
+        double r = ((rgb >> 16) & 0xFF) / 255.0;
+        double g = ((rgb >> 8) & 0xFF) / 255.0;
+        double b = (rgb & 0xFF) / 255.0;
 
         double maxC = Math.max(r, Math.max(g, b));
         double minC = Math.min(r, Math.min(g, b));
@@ -213,13 +846,15 @@ public class imageProcessor {
         if (h < 0) {
             h += 360.0;
         }
-        return new HSV(h, s, v);
+        hsv[HSV.H] = h;
+        hsv[HSV.S] = s;
+        hsv[HSV.V] = v;
     }
 
-    private static Pixel HSVtoRGB(HSV hsv) {
-        double h = hsv.h;
-        double s = Math.max(0.0, Math.min(1.0, hsv.s)); // Clamp S
-        double v = Math.max(0.0, Math.min(1.0, hsv.v)); // Clamp V
+    private static int HSVtoRGB(double[] hsv) {
+        double h = hsv[HSV.H];
+        double s = Math.max(0.0, Math.min(1.0, hsv[HSV.S])); // Clamp S
+        double v = Math.max(0.0, Math.min(1.0, hsv[HSV.V])); // Clamp V
 
         double c = v * s; // Chroma
         double hPrime = h / 60.0;
@@ -246,12 +881,8 @@ public class imageProcessor {
         int g = (int)Math.round((g1 + m) * 255.0);
         int b = (int)Math.round((b1 + m) * 255.0);
 
-        // Final clamping
-        r = Math.max(0, Math.min(255, r));
-        g = Math.max(0, Math.min(255, g));
-        b = Math.max(0, Math.min(255, b));
-
-        return new Pixel(r, g, b);
+        // Final clamping happens in pack
+        return Pixel.pack(r, g, b);
     }
 
 
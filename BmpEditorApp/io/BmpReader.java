@@ -2,46 +2,414 @@ package io;
 
 import Models.BmpHeader;
 import Models.BmpImage;
-import Models.Pixel;
+import Models.IndexedRaster;
+import imageProcessors.ParallelRows;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 public class BmpReader {
-    public static int count = 0;
+    // file header (14) plus BITMAPINFOHEADER (40): exactly what ReadHeader consumes. This used to be a static
+    // byte counter, which raced as soon as two threads read files at once
+    private static final int HEADER_BYTES = 54;
+    // how much one PARALLEL worker reads per call
+    private static final int PARALLEL_READ_BYTES = 4 << 20;
+    // one direct strip buffer per worker thread, kept between reads since direct memory is slow to allocate and
+    // only freed by the GC. PARALLEL_READ_BYTES each, or one row if that's wider.
+    private static final ThreadLocal<ByteBuffer> STRIPS = new ThreadLocal<>();
+
+    // How the pixel array is pulled off disk.
+    // STREAM is the original path, one read() call per pixel.
+    // ROWS reads a whole padded row into a reused buffer and decodes it in one loop.
+    // MAPPED maps the file with FileChannel.map and decodes rows straight out of the mapping.
+    // PARALLEL splits the rows into ranges on ParallelRows; each worker pulls its range off disk with positional
+    // FileChannel reads (rows sit at pixelOffset + row * stride) and decodes it, so several reads are in flight.
+    // No 2 GB limit. The default for read(path).
+    // Palettized (1, 4 and 8 bit) files come back as an IndexedRaster in every mode; STREAM reads them by rows.
+    // RLE8/RLE4 compressed files are decoded straight off the stream, MAPPED hands them to ROWS.
+    public enum ReadMode { STREAM, ROWS, MAPPED, PARALLEL }
 
     public static BmpImage read(String filePath) throws IOException
     {
-        count = 0; // Reset count for each new file read
+        return read(filePath, ReadMode.PARALLEL);
+    }
+
+    public static BmpImage read(String filePath, ReadMode mode) throws IOException
+    {
+        if (mode == ReadMode.MAPPED) {
+            return readMapped(filePath);
+        }
+        if (mode == ReadMode.PARALLEL) {
+            return readParallel(filePath);
+        }
         File bmpImage = new File(filePath);
         try(InputStream iostream = new BufferedInputStream((new FileInputStream(bmpImage)),65536))
        {
            BmpHeader header = ReadHeader(iostream); //first read the header
-           assert header != null;
-           BmpImage image = new BmpImage(header,header.width,header.height); //creating new Image object
-           int BytestoSkip = header.pixelOffset-count;
-           System.out.println("Header info: " + header);
-           System.out.println("count after header: " + count);
-           System.out.println("header.pixelOffset: " + header.pixelOffset);
-           System.out.println("BytestoSkip: " + BytestoSkip);
+           if (header == null) throw new IOException("Could not read BMP header of " + filePath);
+           if (isIndexed(header)) {
+               return readIndexed(iostream, header);
+           }
+           BmpImage image = new BmpImage(header,header.width,Math.abs(header.height)); //creating new Image object
+           int BytestoSkip = header.pixelOffset-HEADER_BYTES;
+           if (mode == ReadMode.STREAM) {
+               // the original reader's trace, kept for that path only
+               System.out.println("Header info: " + header);
+               System.out.println("header.pixelOffset: " + header.pixelOffset);
+               System.out.println("BytestoSkip: " + BytestoSkip);
+           }
            long totalSkipped = 0;
            while (totalSkipped < BytestoSkip) {
                long skipped = iostream.skip(BytestoSkip - totalSkipped);
                if (skipped <= 0) throw new IOException("Error with skipping for reading pixel grid");
                totalSkipped += skipped;
            }
-           ReadImage(iostream,image);
+           if (mode == ReadMode.STREAM) ReadImage(iostream,image);
+           else ReadImageRows(iostream,image);
            return image;
        }
     }
 
+    private static BmpImage readMapped(String filePath) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // a single MappedByteBuffer can't go past 2 GB, positional reads have no such limit
+                return read(filePath, ReadMode.PARALLEL);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            BmpHeader header = ReadHeader(mapped);
+            if (isIndexed(header)) {
+                if (isRle(header)) {
+                    // runs have to be walked from the start anyway, nothing to gain from the mapping
+                    return read(filePath, ReadMode.ROWS);
+                }
+                return readIndexedMapped(mapped, header);
+            }
+            BmpImage image = new BmpImage(header,header.width,Math.abs(header.height));
+            if (header.bitsPerPixel != 24) {
+                return image;
+            }
+            int height = image.height;
+            int width = image.width;
+            boolean isBottomUp = header.height > 0;
+            int stride = rowStride(width);
+            long end = (long) header.pixelOffset + (long) stride * height;
+            if (header.pixelOffset < 0 || end > size) {
+                throw new IOException("Pixel data runs past the end of the file");
+            }
+            byte[] row = new byte[width * 3];
+            for (int i = 0; i < height; i++)
+            {
+                int rowIndex = isBottomUp ? height - 1 - i : i;
+                mapped.position(header.pixelOffset + i * stride);
+                mapped.get(row, 0, row.length);
+                decodeBgrRow(row, image.pixels, rowIndex * width, width);
+            }
+            return image;
+        }
+    }
+
+    // Positional reads off one channel; FileChannel allows those from several threads at once
+    private static BmpImage readParallel(String filePath) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ))
+        {
+            ByteBuffer start = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readAt(channel, start, 0);
+            start.flip();
+            BmpHeader header = ReadHeader(start);
+            int width = header.width;
+            int height = Math.abs(header.height);
+            boolean isBottomUp = header.height > 0;
+            if ((long) width * height > Integer.MAX_VALUE - 8) {
+                throw new IOException("Image too large for one raster: " + width + "x" + height);
+            }
+
+            if (isIndexed(header)) {
+                if (isRle(header)) {
+                    // runs can only be found by walking them from the start
+                    return read(filePath, ReadMode.ROWS);
+                }
+                checkIndexed(header);
+                int entries = paletteEntries(header);
+                ByteBuffer table = ByteBuffer.allocate(entries * 4);
+                readAt(channel, table, 14 + header.headerSize);
+                int[] palette = decodePalette(table.array(), entries, header.bitsPerPixel);
+                byte[] indices = new byte[width * height];
+                int bits = header.bitsPerPixel;
+                readRowsParallel(channel, header.pixelOffset, indexedRowStride(width, bits), width, height, isBottomUp,
+                        (row, rowIndex) -> decodeIndexedRow(row, indices, rowIndex * width, width, bits));
+                return new BmpImage(header, new IndexedRaster(palette, indices, width, height));
+            }
+
+            BmpImage image = new BmpImage(header, width, height);
+            if (header.bitsPerPixel != 24) {
+                return image;
+            }
+            int[] pixels = image.pixels;
+            readRowsParallel(channel, header.pixelOffset, rowStride(width), width, height, isBottomUp,
+                    (row, rowIndex) -> decodeBgrRow(row, pixels, rowIndex * width, width));
+            return image;
+        }
+    }
+
+    private interface RowDecoder
+    {
+        void decode(byte[] row, int rowIndex);
+    }
+
+    // Each worker gets a contiguous range of file rows and reads it a strip at a time into its thread's direct buffer,
+    // then hands the rows out one by one. rowIndex is the raster row, top row 0, whichever way the file runs.
+    private static void readRowsParallel(FileChannel channel, long pixelOffset, int stride, int width, int height,
+                                         boolean isBottomUp, RowDecoder decoder) throws IOException
+    {
+        long end = pixelOffset + (long) stride * height;
+        if (pixelOffset < 0 || end > channel.size()) {
+            throw new IOException("Pixel data runs past the end of the file");
+        }
+        int rowsPerRead = Math.max(1, PARALLEL_READ_BYTES / stride);
+        try {
+            ParallelRows.forEachRowRange(height, width, (startRow, endRow) -> {
+                ByteBuffer strip = strip(rowsPerRead * stride);
+                byte[] row = new byte[stride];
+                try {
+                    for (int first = startRow; first < endRow; first += rowsPerRead)
+                    {
+                        int rows = Math.min(rowsPerRead, endRow - first);
+                        strip.clear();
+                        strip.limit(rows * stride);
+                        readAt(channel, strip, pixelOffset + (long) first * stride);
+                        strip.flip();
+                        for (int i = first; i < first + rows; i++)
+                        {
+                            strip.get(row);
+                            decoder.decode(row, isBottomUp ? height - 1 - i : i);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ByteBuffer strip(int bytes)
+    {
+        ByteBuffer strip = STRIPS.get();
+        if (strip == null || strip.capacity() < bytes) {
+            strip = ByteBuffer.allocateDirect(Math.max(PARALLEL_READ_BYTES, bytes));
+            STRIPS.set(strip);
+        }
+        return strip;
+    }
+
+    // Fills the buffer from position on, without moving the channel's own position
+    private static void readAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("Unexpected EOF at byte " + position);
+            position += read;
+        }
+    }
+
+    static boolean isIndexed(BmpHeader header)
+    {
+        return header.bitsPerPixel == 1 || header.bitsPerPixel == 4 || header.bitsPerPixel == 8;
+    }
+
+    // BI_RLE8 only goes with 8-bit and BI_RLE4 with 4-bit
+    static boolean isRle(BmpHeader header)
+    {
+        return (header.compression == Rle.RLE8 && header.bitsPerPixel == 8)
+                || (header.compression == Rle.RLE4 && header.bitsPerPixel == 4);
+    }
+
+    // The colour table sits right after the info header, 4 bytes (B, G, R, unused) per entry.
+    // It is always padded out to 2^bitsPerPixel entries so any index in the file has a colour.
+    private static int paletteEntries(BmpHeader header) throws IOException
+    {
+        int max = 1 << header.bitsPerPixel;
+        int entries = header.colorsInColorTable <= 0 || header.colorsInColorTable > max ? max : header.colorsInColorTable;
+        if (header.headerSize < 40 || header.pixelOffset < 14 + header.headerSize + entries * 4) {
+            throw new IOException("Colour table does not fit before the pixel data");
+        }
+        return entries;
+    }
+
+    private static int[] decodePalette(byte[] table, int entries, int bitsPerPixel)
+    {
+        int[] palette = new int[1 << bitsPerPixel];
+        for (int i = 0, b = 0; i < entries; i++, b += 4)
+        {
+            palette[i] = ((table[b + 2] & 0xFF) << 16) | ((table[b + 1] & 0xFF) << 8) | (table[b] & 0xFF);
+        }
+        return palette;
+    }
+
+    private static void checkIndexed(BmpHeader header) throws IOException
+    {
+        if (header.compression != 0 && !isRle(header)) {
+            throw new IOException("Compressed " + header.bitsPerPixel + "-bit BMPs are not supported (compression " + header.compression + ")");
+        }
+        if (header.width <= 0 || header.height == 0) {
+            throw new IOException("Bad image dimensions " + header.width + "x" + header.height);
+        }
+    }
+
+    // Stream is positioned right after the 54 header bytes
+    private static BmpImage readIndexed(InputStream iostream, BmpHeader header) throws IOException
+    {
+        checkIndexed(header);
+        int entries = paletteEntries(header);
+        skipFully(iostream, 14 + header.headerSize - HEADER_BYTES);
+        byte[] table = new byte[entries * 4];
+        readFully(iostream, table);
+        int[] palette = decodePalette(table, entries, header.bitsPerPixel);
+        skipFully(iostream, header.pixelOffset - (14 + header.headerSize + entries * 4));
+
+        int width = header.width;
+        int height = Math.abs(header.height);
+        boolean isBottomUp = header.height > 0;
+        byte[] indices = new byte[width * height];
+        if (isRle(header)) {
+            Rle.decode(iostream, indices, width, height, isBottomUp, header.compression == Rle.RLE4);
+            // the raster is plain indices now, so the header describes it uncompressed from here on
+            header.compression = 0;
+            header.imageSize = indexedRowStride(width, header.bitsPerPixel) * height;
+            header.fileSize = header.pixelOffset + header.imageSize;
+            return new BmpImage(header, new IndexedRaster(palette, indices, width, height));
+        }
+        byte[] row = new byte[indexedRowStride(width, header.bitsPerPixel)];
+        for (int i = 0; i < height; i++)
+        {
+            readFully(iostream, row);
+            int rowIndex = isBottomUp ? height - 1 - i : i;
+            decodeIndexedRow(row, indices, rowIndex * width, width, header.bitsPerPixel);
+        }
+        return new BmpImage(header, new IndexedRaster(palette, indices, width, height));
+    }
+
+    private static BmpImage readIndexedMapped(ByteBuffer mapped, BmpHeader header) throws IOException
+    {
+        checkIndexed(header);
+        int entries = paletteEntries(header);
+        byte[] table = new byte[entries * 4];
+        mapped.position(14 + header.headerSize);
+        mapped.get(table);
+        int[] palette = decodePalette(table, entries, header.bitsPerPixel);
+
+        int width = header.width;
+        int height = Math.abs(header.height);
+        boolean isBottomUp = header.height > 0;
+        int stride = indexedRowStride(width, header.bitsPerPixel);
+        long end = (long) header.pixelOffset + (long) stride * height;
+        if (end > mapped.capacity()) {
+            throw new IOException("Pixel data runs past the end of the file");
+        }
+        byte[] indices = new byte[width * height];
+        byte[] row = new byte[stride];
+        for (int i = 0; i < height; i++)
+        {
+            int rowIndex = isBottomUp ? height - 1 - i : i;
+            mapped.position(header.pixelOffset + i * stride);
+            mapped.get(row, 0, row.length);
+            decodeIndexedRow(row, indices, rowIndex * width, width, header.bitsPerPixel);
+        }
+        return new BmpImage(header, new IndexedRaster(palette, indices, width, height));
+    }
+
+    // Packed 1, 4 or 8 bit indices -> a byte per pixel. The leftmost pixel is in the high bits.
+    static void decodeIndexedRow(byte[] row, byte[] indices, int start, int width, int bitsPerPixel)
+    {
+        switch (bitsPerPixel)
+        {
+            case 8:
+                System.arraycopy(row, 0, indices, start, width);
+                break;
+            case 4:
+                for (int j = 0; j < width; j++)
+                {
+                    int b = row[j >> 1];
+                    indices[start + j] = (byte) ((j & 1) == 0 ? (b >> 4) & 0x0F : b & 0x0F);
+                }
+                break;
+            case 1:
+                for (int j = 0; j < width; j++)
+                {
+                    indices[start + j] = (byte) ((row[j >> 3] >> (7 - (j & 7))) & 1);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Not an indexed bit depth: " + bitsPerPixel);
+        }
+    }
+
+    // rows are padded to a multiple of 4 bytes whatever the bit depth
+    static int indexedRowStride(int width, int bitsPerPixel)
+    {
+        return (int) (((long) width * bitsPerPixel + 31) / 32 * 4);
+    }
+
+    private static void skipFully(InputStream is, long bytes) throws IOException
+    {
+        long total = 0;
+        while (total < bytes) {
+            long skipped = is.skip(bytes - total);
+            if (skipped <= 0) throw new IOException("Unexpected EOF while skipping to the pixel data");
+            total += skipped;
+        }
+    }
+
+    private static BmpHeader ReadHeader(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.remaining() < 54) {
+            throw new IOException("File too short for a BMP header");
+        }
+        BmpHeader header = new BmpHeader();
+        header.sigB = buffer.get() & 0xFF;
+        header.sigM = buffer.get() & 0xFF;
+        if(header.sigB != 'B' || header.sigM != 'M')
+        {
+            throw new IOException("Signature is wrong. pleaseo checko");
+        }
+        header.fileSize = buffer.getInt();
+        header.reserved1 = buffer.getShort() & 0xFFFF;
+        header.reserved2 = buffer.getShort() & 0xFFFF;
+        header.pixelOffset = buffer.getInt();
+        header.headerSize = buffer.getInt();
+        header.width = buffer.getInt();
+        header.height = buffer.getInt();
+        header.planes = buffer.getShort() & 0xFFFF;
+        header.bitsPerPixel = buffer.getShort() & 0xFFFF;
+        header.compression = buffer.getInt();
+        header.imageSize = buffer.getInt();
+        header.xPixelsPerMeter = buffer.getInt();
+        header.yPixelsPerMeter = buffer.getInt();
+        header.colorsInColorTable = buffer.getInt();
+        header.importantColors = buffer.getInt();
+        return header;
+    }
+
     private static BmpHeader ReadHeader(InputStream iostream)
     {
         BmpHeader header = new BmpHeader();
         try{
             header.sigB=iostream.read();
             header.sigM= iostream.read();
-            count+=2;
             if(header.sigB != 'B' || header.sigM != 'M')
             {
                 throw new IOException("Signature is wrong. pleaseo checko");
@@ -88,11 +456,12 @@ public class BmpReader {
                 for(int i=0;i<height;i++)
                 {
                     int rowIndex = isBottomUp ? height - 1 - i : i;
+                    int rowStart = rowIndex * width;
                     for(int j=0;j<width;j++)
                     {
                         int read = iostream.read(rgb);
                         if (read != 3) throw new IOException("Unexpected EOF");
-                        image.pixelGrid[rowIndex][j] = new Pixel(rgb[2] & 0xFF, rgb[1] & 0xFF, rgb[0] & 0xFF);
+                        image.pixels[rowStart + j] = ((rgb[2] & 0xFF) << 16) | ((rgb[1] & 0xFF) << 8) | (rgb[0] & 0xFF);
                     }
 
                     if(padding>0)
@@ -114,10 +483,52 @@ public class BmpReader {
         }
     }
 
+    // Reads the pixel array a full padded row at a time into one reused buffer
+    private static void ReadImageRows(InputStream iostream, BmpImage image) throws IOException
+    {
+        if (image.header.bitsPerPixel != 24) {
+            return;
+        }
+        int height = image.height;
+        int width = image.width;
+        boolean isBottomUp = image.header.height > 0;
+        byte[] row = new byte[rowStride(width)];
+        for (int i = 0; i < height; i++)
+        {
+            readFully(iostream, row);
+            int rowIndex = isBottomUp ? height - 1 - i : i;
+            decodeBgrRow(row, image.pixels, rowIndex * width, width);
+        }
+    }
+
+    // BGR byte triples -> packed 0x00RRGGBB
+    static void decodeBgrRow(byte[] row, int[] pixels, int pixelStart, int width)
+    {
+        for (int j = 0, b = 0; j < width; j++, b += 3)
+        {
+            pixels[pixelStart + j] = ((row[b + 2] & 0xFF) << 16) | ((row[b + 1] & 0xFF) << 8) | (row[b] & 0xFF);
+        }
+    }
+
+    static int rowStride(int width)
+    {
+        int rowSize = width * 3;
+        return rowSize + ((4 - (rowSize % 4)) % 4);
+    }
+
+    private static void readFully(InputStream is, byte[] buffer) throws IOException
+    {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = is.read(buffer, total, buffer.length - total);
+            if (read < 0) throw new IOException("Unexpected EOF");
+            total += read;
+        }
+    }
+
     private static int readword(InputStream is) throws IOException {
         int byte1 = is.read();
         int byte2 = is.read();
-        count+=2;
         if(byte1==-1 || byte2 ==-1)
         {
             throw new IOException("woaw eof while reading little endiand word bro");
@@ -130,7 +541,6 @@ public class BmpReader {
         int byte2 = is.read();
         int byte3 = is.read();
         int byte4 = is.read();
-        count+=4;
         if (byte1 == -1 || byte2 == -1 || byte3 == -1 || byte4 == -1) {
             throw new IOException("EOF while reading DWORD");
         }
@@ -2,81 +2,235 @@ package io;
 
 import Models.BmpHeader;
 import Models.BmpImage;
-import Models.Pixel;
+import Models.IndexedRaster;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+// All writers stream: rows are encoded one at a time into a small reused array and collected in one direct
+// buffer, which goes to the file channel whenever the next row would not fit. Extra memory is a row plus the
+// buffer, whatever the image size. The headers are put into the same buffer in one go before the first row.
 public class BmpWriter {
+    // enough for a few rows of most images, grown to a single row for very wide ones
+    private static final int STRIP_BYTES = 1 << 20;
+
     public static void write(String outputFilePath, BmpImage image) throws IOException {
-        if (image == null || image.header == null || image.pixelGrid == null) {
+        if (image == null || image.header == null || image.pixels == null) {
             throw new IllegalArgumentException("BmpImage or its components cannot be null.");
         }
+        if (image.indexed != null) {
+            writeIndexed(outputFilePath, image);
+            return;
+        }
         BmpHeader header = image.header;
-        Pixel[][] pixelGrid = image.pixelGrid;
+        int[] pixels = image.pixels;
 
-        int actualHeight = Math.abs(header.height);
-        int width = header.width;
+        int actualHeight = image.height;
+        int width = image.width;
 
         if (header.bitsPerPixel != 24) {
             throw new IllegalArgumentException("Image is not 24 bit. Cant write");
         }
+        checkUncompressed(header);
 
+        int bytesPerPixel = header.bitsPerPixel / 8;
+        int rowDataSize = width * bytesPerPixel;
+        int padding = (4 - (rowDataSize % 4)) % 4;
+        int rowSizeWithPadding = rowDataSize + padding;
 
-        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(outputFilePath), 65536)) {
-            os.write((byte) 'B');
-            os.write((byte) 'M');
-            writeDword(os, header.fileSize);
-            writeWord(os, header.reserved1);
-            writeWord(os, header.reserved2);
-            writeDword(os, header.pixelOffset);
-
-            writeDword(os, header.headerSize);
-            writeDword(os, header.width);
-            writeDword(os, header.height);
-            writeWord(os, header.planes);
-            writeWord(os, header.bitsPerPixel);
-            writeDword(os, header.compression);
-            writeDword(os, header.imageSize);
-            writeDword(os, header.xPixelsPerMeter);
-            writeDword(os, header.yPixelsPerMeter);
-            writeDword(os, header.colorsInColorTable);
-            writeDword(os, header.importantColors);
-
-            int bytesPerPixel = header.bitsPerPixel / 8;
-            int rowDataSize = width * bytesPerPixel;
-            int padding = (4 - (rowDataSize % 4)) % 4;
-            int rowSizeWithPadding = rowDataSize + padding;
-
-            byte[] totalPixelArray = new byte[rowSizeWithPadding * actualHeight];
-            int currentBufferIndex = 0;
+        try (FileChannel channel = openForWrite(outputFilePath)) {
+            ByteBuffer buffer = stripBuffer(rowSizeWithPadding);
+            putHeader(buffer, header);
 
+            // padding bytes stay 0, the encode loop never touches them
+            byte[] row = new byte[rowSizeWithPadding];
             for (int y = actualHeight - 1; y >= 0; y--) {
-                for (int x = 0; x < width; x++) {
-                    Pixel p = pixelGrid[y][x];
-                    if (p == null) {
-                        totalPixelArray[currentBufferIndex++] = 0;
-                        totalPixelArray[currentBufferIndex++] = 0;
-                        totalPixelArray[currentBufferIndex++] = 0;
-                    } else {
-                        totalPixelArray[currentBufferIndex++] = (byte) p.blue;
-                        totalPixelArray[currentBufferIndex++] = (byte) p.green;
-                        totalPixelArray[currentBufferIndex++] = (byte) p.red;
-                    }
-                }
-                for (int p = 0; p < padding; p++) {
-                    totalPixelArray[currentBufferIndex++] = 0;
+                int rowStart = y * width;
+                for (int x = 0, b = 0; x < width; x++, b += 3) {
+                    int rgb = pixels[rowStart + x];
+                    row[b] = (byte) rgb;
+                    row[b + 1] = (byte) (rgb >> 8);
+                    row[b + 2] = (byte) (rgb >> 16);
                 }
+                put(channel, buffer, row, rowSizeWithPadding);
             }
-            os.write(totalPixelArray);
+            drain(channel, buffer);
+
+            System.out.println("Pixel data written.");
+        }
+        System.out.println("BMP file writing complete for: " + outputFilePath);
+    }
+
+    // Palettized images go out as 8-bit: headers, the palette as B, G, R, 0 quads, then a byte per pixel.
+    // Expects a header already laid out for that, e.g. by BmpImage.UpdateHeader.
+    private static void writeIndexed(String outputFilePath, BmpImage image) throws IOException {
+        BmpHeader header = image.header;
+        IndexedRaster indexed = image.indexed;
+        int width = image.width;
+        int actualHeight = image.height;
+        int[] palette = indexed.palette;
+        int paletteEnd = 14 + header.headerSize + palette.length * 4;
+        if (header.bitsPerPixel != 8 || header.headerSize != 40 || header.pixelOffset < paletteEnd) {
+            throw new IllegalArgumentException("Indexed image needs an 8-bit header with room for its "
+                    + palette.length + " colour palette. Cant write");
+        }
+        checkUncompressed(header);
+
+        try (FileChannel channel = openForWrite(outputFilePath)) {
+            byte[] table = paletteTable(palette, header.pixelOffset - 14 - header.headerSize);
+            byte[] row = new byte[(width + 3) & ~3];
+            ByteBuffer buffer = stripBuffer(Math.max(row.length, table.length));
+            putHeader(buffer, header);
+            put(channel, buffer, table, table.length);
 
+            // one padded row at a time, bottom row first
+            for (int y = actualHeight - 1; y >= 0; y--) {
+                System.arraycopy(indexed.indices, y * width, row, 0, width);
+                put(channel, buffer, row, row.length);
+            }
+            drain(channel, buffer);
             System.out.println("Pixel data written.");
         }
         System.out.println("BMP file writing complete for: " + outputFilePath);
     }
 
+    // Optional compressed output for images with few colours, line art and screenshots mostly.
+    // Palettized images are written as they are; 24-bit ones are palettized first, which only works losslessly
+    // with at most 256 colours, so anything with more is refused. Uses RLE4 when every index fits in 4 bits,
+    // RLE8 otherwise. The image and its header are left alone.
+    public static void writeRle(String outputFilePath, BmpImage image) throws IOException {
+        if (image == null || image.header == null || image.pixels == null) {
+            throw new IllegalArgumentException("BmpImage or its components cannot be null.");
+        }
+        IndexedRaster indexed = image.indexed;
+        if (indexed == null) {
+            indexed = IndexedRaster.fromRgb(image.pixels, image.width, image.height);
+            if (indexed == null) {
+                throw new IllegalArgumentException("Image has more than 256 colours. Cant write it as RLE");
+            }
+        }
+        int maxIndex = 0;
+        for (byte b : indexed.indices) {
+            maxIndex = Math.max(maxIndex, b & 0xFF);
+        }
+        boolean fourBit = maxIndex < 16;
+        int colours = fourBit ? Math.min(16, indexed.palette.length) : indexed.palette.length;
+        int width = indexed.width;
+        int height = indexed.height;
+
+        BmpHeader header = image.header.copy();
+        header.width = width;
+        header.height = height;
+        header.planes = 1;
+        header.headerSize = 40;
+        header.bitsPerPixel = fourBit ? 4 : 8;
+        header.compression = fourBit ? Rle.RLE4 : Rle.RLE8;
+        header.colorsInColorTable = colours;
+        header.importantColors = 0;
+        header.pixelOffset = 14 + 40 + colours * 4;
+
+        try (FileChannel channel = openForWrite(outputFilePath)) {
+            byte[] table = paletteTable(indexed.palette, colours * 4);
+            byte[] line = new byte[Rle.maxLineBytes(width)];
+            ByteBuffer buffer = stripBuffer(Math.max(line.length, table.length));
+            // the sizes aren't known until the last line is encoded, the header is written again at the end
+            putHeader(buffer, header);
+            put(channel, buffer, table, table.length);
+
+            long encoded = 0;
+            for (int y = height - 1; y >= 0; y--) {
+                int n = Rle.encodeLine(indexed.indices, y * width, width, fourBit, y == 0, line);
+                put(channel, buffer, line, n);
+                encoded += n;
+            }
+            drain(channel, buffer);
+
+            if (header.pixelOffset + encoded > Integer.MAX_VALUE) {
+                throw new IOException("RLE data is too large for a BMP header");
+            }
+            header.imageSize = (int) encoded;
+            header.fileSize = header.pixelOffset + header.imageSize;
+            putHeader(buffer, header);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            System.out.println("Pixel data written (" + (fourBit ? "RLE4" : "RLE8") + ", " + encoded + " bytes).");
+        }
+        System.out.println("BMP file writing complete for: " + outputFilePath);
+    }
+
+    // write() only lays out plain rows; compressed output goes through writeRle
+    private static void checkUncompressed(BmpHeader header) {
+        if (header.compression != 0) {
+            throw new IllegalArgumentException("Header says compression " + header.compression
+                    + " but pixels are written uncompressed. Use writeRle, or reset it e.g. with UpdateHeader. Cant write");
+        }
+    }
+
+    private static FileChannel openForWrite(String outputFilePath) throws IOException {
+        return FileChannel.open(Path.of(outputFilePath), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static ByteBuffer stripBuffer(int largestPut) {
+        return ByteBuffer.allocateDirect(Math.max(STRIP_BYTES, largestPut)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Colour table as B, G, R, 0 quads, zero filled out to size bytes
+    private static byte[] paletteTable(int[] palette, int size) {
+        byte[] table = new byte[size];
+        for (int i = 0, b = 0; i < palette.length && b + 3 < size; i++, b += 4) {
+            int rgb = palette[i];
+            table[b] = (byte) rgb;
+            table[b + 1] = (byte) (rgb >> 8);
+            table[b + 2] = (byte) (rgb >> 16);
+        }
+        return table;
+    }
+
+    // Appends length bytes of data, emptying the buffer into the channel first if they don't fit
+    private static void put(FileChannel channel, ByteBuffer buffer, byte[] data, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            drain(channel, buffer);
+        }
+        buffer.put(data, 0, length);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // The 14 byte file header and the 40 byte info header, little-endian like the rest of the file
+    private static void putHeader(ByteBuffer buffer, BmpHeader header) {
+        buffer.put((byte) 'B').put((byte) 'M')
+                .putInt(header.fileSize)
+                .putShort((short) header.reserved1)
+                .putShort((short) header.reserved2)
+                .putInt(header.pixelOffset)
+                .putInt(header.headerSize)
+                .putInt(header.width)
+                .putInt(header.height)
+                .putShort((short) header.planes)
+                .putShort((short) header.bitsPerPixel)
+                .putInt(header.compression)
+                .putInt(header.imageSize)
+                .putInt(header.xPixelsPerMeter)
+                .putInt(header.yPixelsPerMeter)
+                .putInt(header.colorsInColorTable)
+                .putInt(header.importantColors);
+    }
+
     public static void writeWord(OutputStream os, int value) throws IOException {
         os.write(value & 0xFF);
         os.write((value >> 8) & 0xFF);
@@ -88,4 +242,4 @@ public class BmpWriter {
         os.write((value >> 16) & 0xFF);
         os.write((value >> 24) & 0xFF);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// BI_RLE8 / BI_RLE4 pixel data, as used by compression 1 and 2 BMPs.
+//
+// The data is a list of byte pairs. A non-zero first byte n is a run: n pixels of the index in the second byte
+// (for RLE4 the second byte holds two indices that alternate, high nibble first). A zero first byte is an escape:
+//   0 0       end of line
+//   0 1       end of bitmap
+//   0 2 dx dy move right dx and up dy lines, skipped pixels stay index 0
+//   0 n       n >= 3 literal pixels follow (bytes, or nibbles for RLE4), padded to an even number of bytes
+// Lines run bottom-up like uncompressed rows.
+class Rle {
+
+    static final int RLE8 = 1;
+    static final int RLE4 = 2;
+
+    private Rle() {
+    }
+
+    // Reads straight from the stream, a buffer's worth at a time, into a byte-per-pixel index raster
+    static void decode(InputStream in, byte[] indices, int width, int height, boolean bottomUp, boolean fourBit)
+            throws IOException
+    {
+        ByteSource source = new ByteSource(in);
+        int x = 0;
+        int line = 0;
+        while (true)
+        {
+            int first = source.next();
+            if (first < 0) {
+                if (line >= height - 1) return; // some writers leave off the end-of-bitmap marker
+                throw new IOException("RLE data ends after " + line + " of " + height + " lines");
+            }
+            int second = source.next();
+            if (second < 0) throw new IOException("RLE data ends in the middle of a pair");
+
+            if (first > 0)
+            {
+                // encoded run
+                for (int i = 0; i < first; i++, x++)
+                {
+                    int index = fourBit ? ((i & 1) == 0 ? second >> 4 : second & 0x0F) : second;
+                    put(indices, width, height, bottomUp, x, line, index);
+                }
+                continue;
+            }
+            switch (second)
+            {
+                case 0: // end of line
+                    x = 0;
+                    line++;
+                    break;
+                case 1: // end of bitmap
+                    return;
+                case 2: // delta
+                    int dx = source.next();
+                    int dy = source.next();
+                    if (dx < 0 || dy < 0) throw new IOException("RLE data ends inside a delta");
+                    x += dx;
+                    line += dy;
+                    break;
+                default: // literal pixels
+                    int count = second;
+                    int bytes = fourBit ? (count + 1) / 2 : count;
+                    int packed = 0;
+                    for (int i = 0; i < count; i++, x++)
+                    {
+                        if (!fourBit || (i & 1) == 0) {
+                            packed = source.next();
+                            if (packed < 0) throw new IOException("RLE data ends inside a literal run");
+                        }
+                        int index = !fourBit ? packed : (i & 1) == 0 ? packed >> 4 : packed & 0x0F;
+                        put(indices, width, height, bottomUp, x, line, index);
+                    }
+                    if ((bytes & 1) == 1 && source.next() < 0) {
+                        throw new IOException("RLE data ends inside a literal run");
+                    }
+            }
+            if (line >= height) return;
+        }
+    }
+
+    // Pixels past the right edge or the last line are dropped, as other decoders do
+    private static void put(byte[] indices, int width, int height, boolean bottomUp, int x, int line, int index)
+    {
+        if (x >= width || line >= height) return;
+        int row = bottomUp ? height - 1 - line : line;
+        indices[row * width + x] = (byte) index;
+    }
+
+    // Worst case for one encoded line: every pixel a run of 1 (2 bytes), plus the end-of-line pair.
+    // Literals never cost more than that, 2 + count (+1 pad) bytes for count >= 3.
+    static int maxLineBytes(int width)
+    {
+        return 2 * width + 2;
+    }
+
+    // Encodes one line of the raster into out, starting at 0, and returns the byte count.
+    // fourBit needs every index below 16. Lines go out bottom line first, so last is the top row.
+    // Runs of 3 or more identical pixels become runs, everything else goes out as literals; a literal needs
+    // at least 3 pixels, so shorter leftovers are written as runs of 1 and 2.
+    static int encodeLine(byte[] indices, int rowStart, int width, boolean fourBit, boolean last, byte[] out)
+    {
+        int n = 0;
+        int x = 0;
+        while (x < width)
+        {
+            int run = runLength(indices, rowStart, x, width);
+            if (run >= 3) {
+                n = writeRun(out, n, indices[rowStart + x] & 0xFF, run, fourBit);
+                x += run;
+                continue;
+            }
+            // literal span: up to the next run of 3 or more
+            int end = x;
+            while (end < width && end - x < 255 && runLength(indices, rowStart, end, width) < 3) {
+                end++;
+            }
+            int count = end - x;
+            if (count < 3) {
+                for (int i = x; i < end; i++) {
+                    n = writeRun(out, n, indices[rowStart + i] & 0xFF, 1, fourBit);
+                }
+            } else {
+                n = writeLiteral(out, n, indices, rowStart + x, count, fourBit);
+            }
+            x = end;
+        }
+        out[n++] = 0;
+        out[n++] = (byte) (last ? 1 : 0); // end of bitmap after the last line, end of line otherwise
+        return n;
+    }
+
+    private static int runLength(byte[] indices, int rowStart, int x, int width)
+    {
+        byte value = indices[rowStart + x];
+        int end = x + 1;
+        while (end < width && end - x < 255 && indices[rowStart + end] == value) {
+            end++;
+        }
+        return end - x;
+    }
+
+    private static int writeRun(byte[] out, int n, int index, int count, boolean fourBit)
+    {
+        out[n++] = (byte) count;
+        out[n++] = (byte) (fourBit ? (index << 4) | index : index);
+        return n;
+    }
+
+    private static int writeLiteral(byte[] out, int n, byte[] indices, int start, int count, boolean fourBit)
+    {
+        out[n++] = 0;
+        out[n++] = (byte) count;
+        int bytes;
+        if (fourBit) {
+            bytes = (count + 1) / 2;
+            for (int i = 0; i < count; i += 2) {
+                int high = indices[start + i] & 0x0F;
+                int low = i + 1 < count ? indices[start + i + 1] & 0x0F : 0;
+                out[n++] = (byte) ((high << 4) | low);
+            }
+        } else {
+            bytes = count;
+            System.arraycopy(indices, start, out, n, count);
+            n += count;
+        }
+        if ((bytes & 1) == 1) out[n++] = 0; // literals end on a 16-bit boundary
+        return n;
+    }
+
+    // Buffered byte reader over the stream, -1 at the end
+    private static final class ByteSource {
+        private final InputStream in;
+        private final byte[] buffer = new byte[65536];
+        private int position;
+        private int limit;
+
+        ByteSource(InputStream in) {
+            this.in = in;
+        }
+
+        int next() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+    }
+}
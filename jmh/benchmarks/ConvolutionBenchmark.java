@@ -0,0 +1,29 @@
+package benchmarks;
+
+import Kernels.Kernel;
+import Kernels.Kernels;
+import Models.BmpImage;
+import imageProcessors.imageProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+// Every Kernels constant, by field name. @Param values have to be constants, so a new kernel needs adding here.
+public class ConvolutionBenchmark extends ImageBenchmark {
+
+    @Param({"SHARPEN", "BOX_BLUR_3x3", "EMBOSS", "GAUSSIAN_BLUR_3x3", "GAUSSIAN_BLUR_7x7",
+            "STRONG_GAUSSIAN_BLUR_9x9", "SEPARABLE_GAUSSIAN_BLUR_9x9", "SOBEL_X", "SOBEL_Y"})
+    public String kernel;
+
+    private Kernel matrix;
+
+    @Override
+    void prepare() throws Exception {
+        matrix = (Kernel) Kernels.class.getField(kernel).get(null);
+    }
+
+    @Benchmark
+    public BmpImage convolution() {
+        imageProcessor.convolution(image, matrix);
+        return image;
+    }
+}
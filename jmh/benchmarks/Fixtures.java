@@ -0,0 +1,93 @@
+package benchmarks;
+
+import Models.BmpHeader;
+import Models.BmpImage;
+import Models.IndexedRaster;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+// The synthetic images the benchmarks run on, the same ones Benchmarks.java generates.
+// Sizes come in as "WIDTHxHEIGHT" @Param strings; the defaults include odd widths so the row padding code runs.
+final class Fixtures {
+
+    // the reader, writer and App sequences print progress lines; nobody wants those in JMH's output
+    static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private Fixtures() {
+    }
+
+    static int width(String size) {
+        return Integer.parseInt(size.split("x")[0]);
+    }
+
+    static int height(String size) {
+        return Integer.parseInt(size.split("x")[1]);
+    }
+
+    // Smooth gradients with some deterministic noise on top, so HSV sees every hue and the blurs have detail
+    static BmpImage syntheticImage(int width, int height) {
+        BmpImage image = new BmpImage(new BmpHeader(), width, height);
+        image.header.sigB = 'B';
+        image.header.sigM = 'M';
+        image.header.bitsPerPixel = 24;
+        image.header.planes = 1;
+        image.UpdateHeader(14, 40);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / Math.max(1, width - 1) + random.nextInt(32)) & 0xFF;
+                int g = (y * 255 / Math.max(1, height - 1) + random.nextInt(32)) & 0xFF;
+                int b = ((x + y) * 255 / Math.max(1, width + height - 2) + random.nextInt(32)) & 0xFF;
+                image.pixels[y * width + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+        return image;
+    }
+
+    // Flat fills, outlined boxes and thin lines on a white background, like diagrams or UI screenshots.
+    // Every colour comes from a fixed palette of the given size, so the image is palettized from the start.
+    static BmpImage lineArt(int width, int height, int colours) {
+        Random random = new Random(width * 17L + height + colours);
+        int[] palette = new int[colours];
+        palette[0] = 0xFFFFFF;
+        for (int i = 1; i < colours; i++) {
+            palette[i] = random.nextInt(0x1000000);
+        }
+        byte[] indices = new byte[width * height];
+        int boxes = Math.max(4, width * height / 20000);
+        for (int n = 0; n < boxes; n++) {
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            int x1 = Math.min(width, x0 + 4 + random.nextInt(Math.max(1, width / 6)));
+            int y1 = Math.min(height, y0 + 4 + random.nextInt(Math.max(1, height / 6)));
+            byte fill = (byte) random.nextInt(colours);
+            byte border = (byte) random.nextInt(colours);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    boolean edge = y == y0 || y == y1 - 1 || x == x0 || x == x1 - 1;
+                    indices[y * width + x] = edge ? border : fill;
+                }
+            }
+        }
+        // a few diagonal strokes, so not every run lines up with a box
+        for (int n = 0; n < 8; n++) {
+            byte ink = (byte) (1 + random.nextInt(colours - 1));
+            int x0 = random.nextInt(width);
+            for (int y = 0; y < height; y++) {
+                int x = (x0 + y * (n + 1) / 3) % width;
+                indices[y * width + x] = ink;
+            }
+        }
+
+        BmpHeader header = new BmpHeader();
+        header.sigB = 'B';
+        header.sigM = 'M';
+        header.planes = 1;
+        header.headerSize = 40;
+        BmpImage image = new BmpImage(header, new IndexedRaster(palette, indices, width, height));
+        image.UpdateHeader(14, 40);
+        return image;
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import Models.BmpImage;
+import imageProcessors.imageProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+
+// Pixelate, the rotations and the flips
+public class GeometryBenchmark extends ImageBenchmark {
+
+    @Benchmark
+    public BmpImage pixelate8() {
+        imageProcessor.pixelarise(image, 8);
+        return image;
+    }
+
+    @Benchmark
+    public BmpImage pixelate64() {
+        imageProcessor.pixelarise(image, 64);
+        return image;
+    }
+
+    @Benchmark
+    public BmpImage rotateLeft() {
+        imageProcessor.rotateleft(image);
+        return image;
+    }
+
+    @Benchmark
+    public BmpImage rotateRight() {
+        imageProcessor.rotateright(image);
+        return image;
+    }
+
+    @Benchmark
+    public BmpImage rotate180() {
+        imageProcessor.rotate180(image);
+        return image;
+    }
+
+    @Benchmark
+    public BmpImage flipHorizontal() {
+        imageProcessor.flipHorizontal(image);
+        return image;
+    }
+
+    @Benchmark
+    public BmpImage flipVertical() {
+        imageProcessor.flipVertical(image);
+        return image;
+    }
+}
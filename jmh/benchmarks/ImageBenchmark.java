@@ -0,0 +1,52 @@
+package benchmarks;
+
+import Models.BmpImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// Base for the benchmarks that change an image in place: every invocation gets a fresh copy of the
+// synthetic source, made outside the timed part. Level.Invocation adds timestamping around each call, which
+// only shows for the microsecond cases (flips and rotations at 257x131); compare those at the bigger sizes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public abstract class ImageBenchmark {
+
+    @Param({"257x131", "1920x1080", "4001x3000"})
+    public String size;
+
+    BmpImage source;
+    BmpImage image;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void createSource() throws Exception {
+        out = System.out;
+        System.setOut(Fixtures.QUIET);
+        source = Fixtures.syntheticImage(Fixtures.width(size), Fixtures.height(size));
+        prepare();
+    }
+
+    // for subclasses that need more than the source image, e.g. a file on disk
+    void prepare() throws Exception {
+    }
+
+    @Setup(Level.Invocation)
+    public void copySource() {
+        image = source.copy();
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOut() throws Exception {
+        cleanUp();
+        System.setOut(out);
+    }
+
+    void cleanUp() throws Exception {
+    }
+}
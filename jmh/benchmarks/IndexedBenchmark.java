@@ -0,0 +1,68 @@
+package benchmarks;
+
+import Models.BmpImage;
+import io.BmpReader;
+import io.BmpWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// Palettized images as uncompressed 8-bit and as RLE: line art (8 colours, RLE4) and screenshot-like (64, RLE8).
+// Benchmarks.java also prints the file sizes of each encoding; JMH only does times.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexedBenchmark {
+
+    @Param({"257x131", "1920x1080", "4001x3000"})
+    public String size;
+
+    @Param({"lineart", "screenshot"})
+    public String fixture;
+
+    @Param({"BI_RGB", "RLE"})
+    public String encoding;
+
+    private BmpImage image;
+    private File input;
+    private File output;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void writeFixture() throws Exception {
+        out = System.out;
+        System.setOut(Fixtures.QUIET);
+        image = Fixtures.lineArt(Fixtures.width(size), Fixtures.height(size), fixture.equals("lineart") ? 8 : 64);
+        input = File.createTempFile("bmp-bench", ".bmp");
+        output = File.createTempFile("bmp-bench-out", ".bmp");
+        write(input);
+    }
+
+    @Benchmark
+    public BmpImage read() throws Exception {
+        return BmpReader.read(input.getPath());
+    }
+
+    @Benchmark
+    public File write() throws Exception {
+        write(output);
+        return output;
+    }
+
+    private void write(File file) throws Exception {
+        if (encoding.equals("RLE")) BmpWriter.writeRle(file.getPath(), image);
+        else BmpWriter.write(file.getPath(), image);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixtures() {
+        input.delete();
+        output.delete();
+        System.setOut(out);
+    }
+}
@@ -0,0 +1,39 @@
+package benchmarks;
+
+import Filters.Filters;
+import Filters.HSVfilters;
+import Models.BmpImage;
+import imageProcessors.imageProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.Consumer;
+
+// Every filter and HSV filter on its own, as "className strength"
+public class PointFilterBenchmark extends ImageBenchmark {
+
+    @Param({"greyScale 0", "posterize 4", "threshold 128", "negative 0", "darken 40", "brightness 30",
+            "solarize 128", "solarizeTest 128", "swap 0", "red 50", "blue 50",
+            "hue 90", "saturation -30", "value 40"})
+    public String filter;
+
+    private Consumer<BmpImage> operation;
+
+    @Override
+    void prepare() throws Exception {
+        String[] parts = filter.split(" ");
+        Object instance = Class.forName("Filters." + parts[0]).getDeclaredConstructor().newInstance();
+        int strength = Integer.parseInt(parts[1]);
+        if (instance instanceof HSVfilters) {
+            operation = image -> imageProcessor.applyHSVfilter(image, (HSVfilters) instance, strength);
+        } else {
+            operation = image -> imageProcessor.applyFilter(image, (Filters) instance, strength);
+        }
+    }
+
+    @Benchmark
+    public BmpImage apply() {
+        operation.accept(image);
+        return image;
+    }
+}
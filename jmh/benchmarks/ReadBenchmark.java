@@ -0,0 +1,48 @@
+package benchmarks;
+
+import Models.BmpImage;
+import io.BmpReader;
+import io.BmpWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// BmpReader in every ReadMode, off a 24-bit fixture written once per trial
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"257x131", "1920x1080", "4001x3000"})
+    public String size;
+
+    @Param({"STREAM", "ROWS", "MAPPED", "PARALLEL"})
+    public BmpReader.ReadMode mode;
+
+    private File fixture;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void writeFixture() throws Exception {
+        out = System.out;
+        System.setOut(Fixtures.QUIET);
+        fixture = File.createTempFile("bmp-bench", ".bmp");
+        BmpWriter.write(fixture.getPath(), Fixtures.syntheticImage(Fixtures.width(size), Fixtures.height(size)));
+    }
+
+    @Benchmark
+    public BmpImage read() throws Exception {
+        return BmpReader.read(fixture.getPath(), mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() {
+        fixture.delete();
+        System.setOut(out);
+    }
+}
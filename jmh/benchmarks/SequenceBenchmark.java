@@ -0,0 +1,32 @@
+package benchmarks;
+
+import Models.BmpImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+// The console sequences. App is in the default package, which can't be imported from here,
+// so the methods are looked up by name.
+public class SequenceBenchmark extends ImageBenchmark {
+
+    @Param({"applySobelEdgeDetection", "comic1", "comic2", "grey_art", "dreamy"})
+    public String sequence;
+
+    private MethodHandle method;
+
+    @Override
+    void prepare() throws Exception {
+        Method found = Class.forName("App").getDeclaredMethod(sequence, BmpImage.class);
+        found.setAccessible(true);
+        method = MethodHandles.lookup().unreflect(found);
+    }
+
+    @Benchmark
+    public BmpImage run() throws Throwable {
+        method.invoke(image);
+        return image;
+    }
+}
@@ -0,0 +1,28 @@
+package benchmarks;
+
+import io.BmpWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.File;
+
+// BmpWriter.write of the 24-bit synthetic image to a temp file
+public class WriteBenchmark extends ImageBenchmark {
+
+    private File output;
+
+    @Override
+    void prepare() throws Exception {
+        output = File.createTempFile("bmp-bench-out", ".bmp");
+    }
+
+    @Benchmark
+    public File write() throws Exception {
+        BmpWriter.write(output.getPath(), image);
+        return output;
+    }
+
+    @Override
+    void cleanUp() {
+        output.delete();
+    }
+}